@@ -0,0 +1,234 @@
+package mnm.mods.kappa.bench;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.processing.Processor;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Measures how much compile time Kappa adds to a synthetic mod pack. The pack
+ * is compiled without processors, with each processor listed in
+ * {@code META-INF/services/javax.annotation.processing.Processor} on its own,
+ * and with all of them. Wall time and bytes allocated by the compiling thread
+ * are reported for each, along with the overhead over the plain compile.
+ * <p>
+ * Run with {@code gradle benchCompile}. Options are given as
+ * {@code name=value} arguments: {@code mods}, {@code proxies},
+ * {@code handlerClasses}, {@code handlers}, {@code blocks}, {@code variants},
+ * {@code fml}, {@code warmup} and {@code runs}.
+ */
+public class CompileBenchmark {
+
+    private static final String SERVICES = "META-INF/services/" + Processor.class.getName();
+
+    private final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    private final List<JavaFileObject> sources;
+    private final Path output;
+
+    public CompileBenchmark(List<JavaFileObject> sources, Path output) {
+        this.sources = sources;
+        this.output = output;
+    }
+
+    public static void main(String[] args) throws Exception {
+        SyntheticModGenerator generator = new SyntheticModGenerator();
+        int warmup = 3;
+        int runs = 5;
+        for (String arg : args) {
+            String[] kv = arg.split("=", 2);
+            int value = kv.length > 1 && kv[1].matches("\\d+") ? Integer.parseInt(kv[1]) : 0;
+            switch (kv[0]) {
+            case "mods":
+                generator.mods = value;
+                break;
+            case "proxies":
+                generator.proxies = value;
+                break;
+            case "handlerClasses":
+                generator.handlerClasses = value;
+                break;
+            case "handlers":
+                generator.handlers = value;
+                break;
+            case "blocks":
+                generator.blocks = value;
+                break;
+            case "variants":
+                generator.variants = value;
+                break;
+            case "fml":
+                generator.fmlPackage = kv[1];
+                break;
+            case "warmup":
+                warmup = value;
+                break;
+            case "runs":
+                runs = value;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option " + kv[0]);
+            }
+        }
+
+        Path output = Files.createTempDirectory("kappa-bench");
+        try {
+            CompileBenchmark bench = new CompileBenchmark(generator.generate(), output);
+            System.out.println("Compiling " + generator.getClassCount() + " classes, "
+                    + warmup + " warmup and " + runs + " measured runs each");
+
+            Map<String, List<String>> configs = new LinkedHashMap<>();
+            configs.put("none", null);
+            List<String> all = readProcessors();
+            for (String processor : all) {
+                configs.put(processor.substring(processor.lastIndexOf('.') + 1),
+                        Arrays.asList(processor));
+            }
+            configs.put("all", all);
+
+            Result baseline = null;
+            System.out.printf("%-20s %12s %14s %14s %14s%n", "processors", "wall ms",
+                    "alloc MB", "overhead ms", "overhead MB");
+            for (Map.Entry<String, List<String>> config : configs.entrySet()) {
+                Result result = bench.measure(config.getValue(), warmup, runs);
+                if (baseline == null) {
+                    baseline = result;
+                }
+                System.out.printf("%-20s %12.1f %14.1f %14.1f %14.1f%n", config.getKey(),
+                        result.millis, result.megabytes, result.millis - baseline.millis,
+                        result.megabytes - baseline.megabytes);
+            }
+        } finally {
+            delete(output);
+        }
+    }
+
+    /**
+     * Compiles the sources repeatedly and averages the last runs.
+     *
+     * @param processors The processor class names, or null for none
+     * @param warmup The number of runs to discard
+     * @param runs The number of runs to measure
+     * @return The averages
+     */
+    public Result measure(List<String> processors, int warmup, int runs) throws Exception {
+        Result result = new Result();
+        for (int i = 0; i < warmup + runs; i++) {
+            long[] sample = compile(processors);
+            if (i >= warmup) {
+                result.millis += sample[0] / 1e6 / runs;
+                result.megabytes += sample[1] / 1048576.0 / runs;
+            }
+        }
+        return result;
+    }
+
+    private long[] compile(List<String> processors) throws Exception {
+        delete(output);
+        Files.createDirectories(output);
+        List<String> options = new ArrayList<>();
+        options.add("-d");
+        options.add(output.toString());
+        options.add("-classpath");
+        options.add(System.getProperty("java.class.path"));
+        if (processors == null) {
+            options.add("-proc:none");
+        }
+        List<Processor> instances = new ArrayList<>();
+        if (processors != null) {
+            for (String name : processors) {
+                instances.add((Processor) Class.forName(name).newInstance());
+            }
+        }
+
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null,
+                StandardCharsets.UTF_8);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        long allocated = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, options,
+                null, sources);
+        task.setProcessors(instances);
+        boolean success = task.call();
+        long time = System.nanoTime() - start;
+        allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+        fileManager.close();
+
+        if (!success) {
+            throw new IllegalStateException("Compile failed: " + diagnostics.getDiagnostics());
+        }
+        return new long[] { time, allocated };
+    }
+
+    private static List<String> readProcessors() throws IOException {
+        List<String> processors = new ArrayList<>();
+        Enumeration<URL> services = CompileBenchmark.class.getClassLoader().getResources(SERVICES);
+        while (services.hasMoreElements()) {
+            URL url = services.nextElement();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream(),
+                    StandardCharsets.UTF_8));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (line.startsWith("mnm.mods.kappa.") && !processors.contains(line)) {
+                        processors.add(line);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        return processors;
+    }
+
+    private static void delete(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * The averages of a measured configuration.
+     */
+    public static class Result {
+        public double millis;
+        public double megabytes;
+    }
+}
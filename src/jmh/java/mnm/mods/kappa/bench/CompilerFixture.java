@@ -0,0 +1,123 @@
+package mnm.mods.kappa.bench;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.TypeElement;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+/**
+ * Runs javac in process over generated sources and holds it inside the first
+ * processing round, so benchmarks can use a real
+ * {@link ProcessingEnvironment}. javac is parked while the benchmark runs, so
+ * only one thread uses its model at a time.
+ */
+public class CompilerFixture {
+
+    private final CountDownLatch ready = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<JavaFileObject> sources = new ArrayList<>();
+    private Thread thread;
+    private volatile ProcessingEnvironment processingEnv;
+    private volatile Throwable failure;
+
+    /**
+     * Adds a source file.
+     *
+     * @param name The fully qualified class name
+     * @param source The source code
+     * @return This fixture
+     */
+    public CompilerFixture addSource(String name, final String source) {
+        URI uri = URI.create("string:///" + name.replace('.', '/') + JavaFileObject.Kind.SOURCE.extension);
+        sources.add(new SimpleJavaFileObject(uri, JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) throws IOException {
+                return source;
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Starts javac and waits until it is in the first round.
+     *
+     * @return The processing environment
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public ProcessingEnvironment start() throws InterruptedException {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        final List<String> options = new ArrayList<>();
+        options.add("-proc:only");
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    JavaCompiler.CompilationTask task = compiler.getTask(null, null, null,
+                            options, null, sources);
+                    task.setProcessors(Collections.singleton(new Holder()));
+                    task.call();
+                } catch (Throwable t) {
+                    failure = t;
+                } finally {
+                    ready.countDown();
+                }
+            }
+        }, "javac-fixture");
+        thread.setDaemon(true);
+        thread.start();
+        ready.await();
+        if (processingEnv == null) {
+            throw new IllegalStateException("javac did not reach processing", failure);
+        }
+        return processingEnv;
+    }
+
+    /**
+     * Lets javac finish.
+     *
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public void stop() throws InterruptedException {
+        release.countDown();
+        if (thread != null) {
+            thread.join();
+        }
+    }
+
+    @SupportedAnnotationTypes("*")
+    private class Holder extends AbstractProcessor {
+
+        @Override
+        public SourceVersion getSupportedSourceVersion() {
+            return SourceVersion.latestSupported();
+        }
+
+        @Override
+        public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+            if (CompilerFixture.this.processingEnv == null) {
+                CompilerFixture.this.processingEnv = this.processingEnv;
+                ready.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package mnm.mods.kappa.bench;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import mnm.mods.kappa.AnnotationMember;
+import mnm.mods.kappa.ProcessingUtils;
+
+/**
+ * Measures the checks in {@link ProcessingUtils} against a class with
+ * {@code size} members. Every check passes, so only the cost of checking is
+ * measured. Run with {@code gradle jmh}, which enables {@code -prof gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessingUtilsBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    public int size;
+
+    private CompilerFixture fixture;
+    private ProcessingUtils utils;
+
+    private TypeElement subject;
+    private ExecutableElement method;
+    private VariableElement field;
+    private TypeElement fieldType;
+    private TypeMirror[] parameters;
+    private TypeMirror[] constructor;
+    private AnnotationMirror annotation;
+    private AnnotationMember<String> annotationValue;
+
+    @Setup(Level.Trial)
+    public void setup() throws InterruptedException {
+        fixture = new CompilerFixture()
+                .addSource("bench.Anno", "package bench;\n"
+                        + "public @interface Anno { String value(); int count() default 3; }\n")
+                .addSource("bench.Subject", generateSubject(size));
+        ProcessingEnvironment processingEnv = fixture.start();
+        utils = new ProcessingUtils(processingEnv);
+
+        subject = utils.getTypeElement("bench.Subject");
+        for (ExecutableElement e : ElementFilter.methodsIn(subject.getEnclosedElements())) {
+            if (e.getSimpleName().contentEquals("target")) {
+                method = e;
+            }
+        }
+        for (VariableElement e : ElementFilter.fieldsIn(subject.getEnclosedElements())) {
+            if (e.getSimpleName().contentEquals("annotated")) {
+                field = e;
+            }
+        }
+        fieldType = utils.getTypeElement("java.lang.String");
+        parameters = new TypeMirror[] { utils.getType("java.lang.String"), utils.getType("int") };
+        constructor = parameters;
+        TypeElement anno = utils.getTypeElement("bench.Anno");
+        annotation = utils.getAnnotation(field, anno);
+        annotationValue = utils.getMember(anno, "value", String.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        fixture.stop();
+    }
+
+    @Benchmark
+    public void ensureModifier() {
+        utils.ensureModifier(method, Modifier.PUBLIC, true);
+        utils.ensureModifier(method, Modifier.STATIC, false);
+    }
+
+    @Benchmark
+    public void ensureConstructor() {
+        utils.ensureConstructor(subject, constructor);
+    }
+
+    @Benchmark
+    public void ensureParameters() {
+        utils.ensureParameters(method, parameters);
+    }
+
+    @Benchmark
+    public void ensureAssignable() {
+        utils.ensureAssignable(field, fieldType);
+    }
+
+    @Benchmark
+    @SuppressWarnings("deprecation")
+    public Map<String, AnnotationValue> getAnnotationValues() {
+        return utils.getAnnotationValues(annotation);
+    }
+
+    @Benchmark
+    public String getMember() {
+        return annotationValue.get(annotation);
+    }
+
+    @Benchmark
+    public AnnotationMirror getAnnotation() {
+        return utils.getAnnotation(field, annotation.getAnnotationType());
+    }
+
+    /**
+     * Like {@link #getAnnotation()}, but starts a new round first so the
+     * annotations are read again instead of taken from the cache.
+     */
+    @Benchmark
+    public AnnotationMirror getAnnotationNewRound() {
+        utils.newRound();
+        return utils.getAnnotation(field, annotation.getAnnotationType());
+    }
+
+    /**
+     * Generates a class with the members the benchmarks check and
+     * {@code size} filler members. The wanted constructor is declared last so
+     * lookups have to pass every member.
+     */
+    static String generateSubject(int size) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("package bench;\n");
+        sb.append("public class Subject {\n");
+        sb.append("    @Anno(\"x\") public CharSequence annotated;\n");
+        sb.append("    public void target(String s, int i) {}\n");
+        for (int i = 0; i < size; i++) {
+            switch (i % 3) {
+            case 0:
+                sb.append("    public int field").append(i).append(";\n");
+                break;
+            case 1:
+                sb.append("    public void method").append(i).append("(long l) {}\n");
+                break;
+            default:
+                sb.append("    public static class Type").append(i).append(" {}\n");
+                sb.append("    public Subject(Type").append(i).append(" t) {}\n");
+                break;
+            }
+        }
+        sb.append("    public Subject(String s, int i) {}\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+}
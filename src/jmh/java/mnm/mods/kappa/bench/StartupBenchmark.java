@@ -0,0 +1,246 @@
+package mnm.mods.kappa.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.Set;
+
+import javax.annotation.processing.Completion;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.Processor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Measures what Kappa costs a compilation with nothing for it to do. A class
+ * with only a JDK annotation is compiled with every processor in
+ * {@code META-INF/services/javax.annotation.processing.Processor}, loaded from
+ * a new class loader each run as javac would. The Kappa classes loaded, the
+ * classes loaded by the JVM as a whole, and the time spent creating,
+ * initializing and calling the processors are reported.
+ * <p>
+ * The first run is cold and shows the class loading. Later runs are averaged
+ * for the times. Run with {@code gradle benchStartup}. {@code runs=<n>} sets
+ * the number of runs.
+ */
+public class StartupBenchmark {
+
+    private static final String SOURCE = "package plain;\n"
+            + "public class Plain {\n"
+            + "    @Deprecated\n"
+            + "    public void method() {\n"
+            + "    }\n"
+            + "}\n";
+
+    private final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    private final ClassLoadingMXBean classLoading = ManagementFactory.getClassLoadingMXBean();
+    private final URL[] classpath;
+    private final List<JavaFileObject> sources = new ArrayList<>();
+
+    public StartupBenchmark(URL[] classpath) {
+        this.classpath = classpath;
+        URI uri = URI.create("string:///plain/Plain" + JavaFileObject.Kind.SOURCE.extension);
+        sources.add(new SimpleJavaFileObject(uri, JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) throws IOException {
+                return SOURCE;
+            }
+        });
+    }
+
+    public static void main(String[] args) throws Exception {
+        int runs = 10;
+        for (String arg : args) {
+            String[] kv = arg.split("=", 2);
+            if (kv[0].equals("runs") && kv.length > 1) {
+                runs = Integer.parseInt(kv[1]);
+            } else {
+                throw new IllegalArgumentException("Unknown option " + kv[0]);
+            }
+        }
+        StartupBenchmark bench = new StartupBenchmark(getClasspath());
+
+        // javac's own classes are loaded and warm before anything is counted
+        bench.compile(false);
+        bench.compile(false);
+
+        Result cold = bench.compile(true);
+        Result baseline = new Result();
+        Result warm = new Result();
+        for (int i = 0; i < runs; i++) {
+            Result run = bench.compile(true);
+            warm.create += run.create / runs;
+            warm.init += run.init / runs;
+            warm.process += run.process / runs;
+            warm.total += run.total / runs;
+            baseline.total += bench.compile(false).total / runs;
+        }
+
+        System.out.println("Cold run");
+        System.out.printf("  %-24s %8d%n", "Kappa classes loaded", cold.kappaClasses);
+        System.out.printf("  %-24s %8d%n", "JVM classes loaded", cold.jvmClasses);
+        System.out.printf("  %-24s %8.2f ms%n", "create", cold.create / 1e6);
+        System.out.printf("  %-24s %8.2f ms%n", "init", cold.init / 1e6);
+        System.out.printf("  %-24s %8.2f ms%n", "process", cold.process / 1e6);
+        System.out.println("Warm average of " + runs + " runs");
+        System.out.printf("  %-24s %8.2f ms%n", "create", warm.create / 1e6);
+        System.out.printf("  %-24s %8.2f ms%n", "init", warm.init / 1e6);
+        System.out.printf("  %-24s %8.2f ms%n", "process", warm.process / 1e6);
+        System.out.printf("  %-24s %8.2f ms%n", "compile overhead", (warm.total - baseline.total) / 1e6);
+    }
+
+    /**
+     * Compiles the source once.
+     *
+     * @param processors True to run Kappa's processors from a new class loader
+     * @return The numbers of the run
+     */
+    public Result compile(boolean processors) throws IOException {
+        Result result = new Result();
+        long loaded = classLoading.getTotalLoadedClassCount();
+        long start = System.nanoTime();
+
+        List<String> options = new ArrayList<>();
+        options.add("-proc:only");
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null,
+                StandardCharsets.UTF_8);
+        CountingClassLoader loader = null;
+        try {
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, options,
+                    null, sources);
+            List<Processor> instances = new ArrayList<>();
+            if (processors) {
+                loader = new CountingClassLoader(classpath);
+                long create = System.nanoTime();
+                for (Processor processor : ServiceLoader.load(Processor.class, loader)) {
+                    instances.add(new TimedProcessor(processor, result));
+                }
+                result.create = System.nanoTime() - create;
+            }
+            task.setProcessors(instances);
+            if (!task.call()) {
+                throw new IllegalStateException("Compile failed: " + diagnostics.getDiagnostics());
+            }
+        } finally {
+            fileManager.close();
+            if (loader != null) {
+                loader.close();
+            }
+        }
+
+        result.total = System.nanoTime() - start;
+        result.jvmClasses = classLoading.getTotalLoadedClassCount() - loaded;
+        result.kappaClasses = loader == null ? 0 : loader.count;
+        return result;
+    }
+
+    private static URL[] getClasspath() throws MalformedURLException {
+        String[] paths = System.getProperty("java.class.path").split(File.pathSeparator);
+        URL[] urls = new URL[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            urls[i] = new File(paths[i]).toURI().toURL();
+        }
+        return urls;
+    }
+
+    /**
+     * The numbers of one run. Times are in nanoseconds.
+     */
+    public static class Result {
+        public long kappaClasses;
+        public long jvmClasses;
+        public double create;
+        public double init;
+        public double process;
+        public double total;
+    }
+
+    /**
+     * Loads classes from the class path itself instead of asking the
+     * application class loader, and counts them.
+     */
+    private static class CountingClassLoader extends URLClassLoader {
+        private int count;
+
+        private CountingClassLoader(URL[] urls) {
+            // skip the application class loader so Kappa is loaded again
+            super(urls, ClassLoader.getSystemClassLoader().getParent());
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            Class<?> type = super.findClass(name);
+            count++;
+            return type;
+        }
+    }
+
+    /**
+     * Times the calls to a processor.
+     */
+    private static class TimedProcessor implements Processor {
+        private final Processor processor;
+        private final Result result;
+
+        private TimedProcessor(Processor processor, Result result) {
+            this.processor = processor;
+            this.result = result;
+        }
+
+        @Override
+        public Set<String> getSupportedOptions() {
+            return processor.getSupportedOptions();
+        }
+
+        @Override
+        public Set<String> getSupportedAnnotationTypes() {
+            return processor.getSupportedAnnotationTypes();
+        }
+
+        @Override
+        public SourceVersion getSupportedSourceVersion() {
+            return processor.getSupportedSourceVersion();
+        }
+
+        @Override
+        public void init(ProcessingEnvironment processingEnv) {
+            long start = System.nanoTime();
+            processor.init(processingEnv);
+            result.init += System.nanoTime() - start;
+        }
+
+        @Override
+        public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+            long start = System.nanoTime();
+            boolean claimed = processor.process(annotations, roundEnv);
+            result.process += System.nanoTime() - start;
+            return claimed;
+        }
+
+        @Override
+        public Iterable<? extends Completion> getCompletions(Element element, AnnotationMirror annotation,
+                ExecutableElement member, String userText) {
+            return processor.getCompletions(element, annotation, member, userText);
+        }
+    }
+}
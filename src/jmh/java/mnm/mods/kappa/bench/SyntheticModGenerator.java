@@ -0,0 +1,194 @@
+package mnm.mods.kappa.bench;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+
+/**
+ * Generates the sources of a synthetic mod pack, along with stubs of the FML
+ * types it uses so it compiles on its own. Every generated annotation is used
+ * correctly, so processors do all of their checks without printing anything.
+ * <p>
+ * Each mod has:
+ * <ul>
+ * <li>a {@code @Mod} class with an {@code @Instance}, an {@code @EventHandler}
+ * and {@link #proxies} {@code @SidedProxy} fields</li>
+ * <li>a common and a client proxy class</li>
+ * <li>an event class and {@link #handlerClasses} classes with
+ * {@link #handlers} {@code @SubscribeEvent} methods each</li>
+ * <li>a class with {@link #blocks} {@code @BlockDef} fields with
+ * {@link #variants} variants each</li>
+ * </ul>
+ */
+public class SyntheticModGenerator {
+
+    /** The package FML is in, {@code cpw.mods} or {@code net.minecraftforge} */
+    public String fmlPackage = "net.minecraftforge";
+    /** The number of mods */
+    public int mods = 250;
+    /** The number of {@code @SidedProxy} fields in each mod */
+    public int proxies = 2;
+    /** The number of event handler classes in each mod */
+    public int handlerClasses = 16;
+    /** The number of {@code @SubscribeEvent} methods in each handler class */
+    public int handlers = 4;
+    /** The number of {@code @BlockDef} fields in each mod */
+    public int blocks = 8;
+    /** The number of variants of each block */
+    public int variants = 2;
+
+    /**
+     * Generates the stubs and every mod.
+     *
+     * @return The sources
+     */
+    public List<JavaFileObject> generate() {
+        List<JavaFileObject> sources = new ArrayList<>();
+        generateStubs(sources);
+        for (int i = 0; i < mods; i++) {
+            generateMod(sources, i);
+        }
+        return sources;
+    }
+
+    /**
+     * @return The number of classes {@link #generate()} creates for the mods,
+     *         not counting stubs
+     */
+    public int getClassCount() {
+        return mods * (5 + handlerClasses);
+    }
+
+    private void generateStubs(List<JavaFileObject> sources) {
+        String common = fmlPackage + ".fml.common";
+        add(sources, common + ".Mod", "package " + common + ";\n"
+                + "import java.lang.annotation.*;\n"
+                + "@Retention(RetentionPolicy.RUNTIME) @Target(ElementType.TYPE)\n"
+                + "public @interface Mod {\n"
+                + "    String modid();\n"
+                + "    String name() default \"\";\n"
+                + "    String version() default \"\";\n"
+                + "    @Retention(RetentionPolicy.RUNTIME) @Target(ElementType.METHOD) @interface EventHandler {}\n"
+                + "    @Retention(RetentionPolicy.RUNTIME) @Target(ElementType.FIELD) @interface Instance { String value() default \"\"; }\n"
+                + "    @Retention(RetentionPolicy.RUNTIME) @Target(ElementType.FIELD) @interface Metadata { String value() default \"\"; }\n"
+                + "    @Retention(RetentionPolicy.RUNTIME) @Target(ElementType.METHOD) @interface InstanceFactory {}\n"
+                + "}\n");
+        add(sources, common + ".SidedProxy", "package " + common + ";\n"
+                + "import java.lang.annotation.*;\n"
+                + "@Retention(RetentionPolicy.RUNTIME) @Target(ElementType.FIELD)\n"
+                + "public @interface SidedProxy {\n"
+                + "    String clientSide() default \"\";\n"
+                + "    String serverSide() default \"\";\n"
+                + "    String modId() default \"\";\n"
+                + "}\n");
+        add(sources, common + ".ModMetadata", "package " + common + ";\n"
+                + "public class ModMetadata {}\n");
+        add(sources, common + ".event.FMLEvent", "package " + common + ".event;\n"
+                + "public class FMLEvent {}\n");
+        add(sources, common + ".event.FMLInitializationEvent", "package " + common + ".event;\n"
+                + "public class FMLInitializationEvent extends FMLEvent {}\n");
+        add(sources, common + ".eventhandler.Event", "package " + common + ".eventhandler;\n"
+                + "import java.lang.annotation.*;\n"
+                + "public class Event {\n"
+                + "    @Retention(RetentionPolicy.RUNTIME) @Target(ElementType.TYPE) public @interface HasResult {}\n"
+                + "    public boolean isCancelable() { return false; }\n"
+                + "    public boolean isCanceled() { return false; }\n"
+                + "}\n");
+        add(sources, common + ".eventhandler.EventPriority", "package " + common + ".eventhandler;\n"
+                + "public enum EventPriority { HIGHEST, HIGH, NORMAL, LOW, LOWEST }\n");
+        add(sources, common + ".eventhandler.SubscribeEvent", "package " + common + ".eventhandler;\n"
+                + "import java.lang.annotation.*;\n"
+                + "@Retention(RetentionPolicy.RUNTIME) @Target(ElementType.METHOD)\n"
+                + "public @interface SubscribeEvent {\n"
+                + "    EventPriority priority() default EventPriority.NORMAL;\n"
+                + "    boolean receiveCanceled() default false;\n"
+                + "}\n");
+        add(sources, common + ".eventhandler.Cancelable", "package " + common + ".eventhandler;\n"
+                + "import java.lang.annotation.*;\n"
+                + "@Retention(RetentionPolicy.RUNTIME) @Target(ElementType.TYPE)\n"
+                + "public @interface Cancelable {}\n");
+        add(sources, common + ".network.NetworkCheckHandler", "package " + common + ".network;\n"
+                + "import java.lang.annotation.*;\n"
+                + "@Retention(RetentionPolicy.RUNTIME) @Target(ElementType.METHOD)\n"
+                + "public @interface NetworkCheckHandler {}\n");
+        add(sources, fmlPackage + ".fml.relauncher.Side", "package " + fmlPackage + ".fml.relauncher;\n"
+                + "public enum Side { CLIENT, SERVER }\n");
+    }
+
+    private void generateMod(List<JavaFileObject> sources, int index) {
+        String common = fmlPackage + ".fml.common";
+        String pkg = "mods.mod" + index;
+        String modid = "mod" + index;
+
+        StringBuilder mod = new StringBuilder();
+        mod.append("package ").append(pkg).append(";\n");
+        mod.append("import ").append(common).append(".*;\n");
+        mod.append("import ").append(common).append(".Mod.*;\n");
+        mod.append("import ").append(common).append(".event.*;\n");
+        mod.append("@Mod(modid = \"").append(modid).append("\")\n");
+        mod.append("public class ModMain {\n");
+        mod.append("    @Instance(\"").append(modid).append("\") public static ModMain instance;\n");
+        for (int i = 0; i < proxies; i++) {
+            mod.append("    @SidedProxy(clientSide = \"").append(pkg).append(".ClientProxy\", serverSide = \"")
+                    .append(pkg).append(".CommonProxy\") public static CommonProxy proxy").append(i)
+                    .append(";\n");
+        }
+        mod.append("    @EventHandler public void init(FMLInitializationEvent event) {}\n");
+        mod.append("}\n");
+        add(sources, pkg + ".ModMain", mod.toString());
+
+        add(sources, pkg + ".CommonProxy", "package " + pkg + ";\n"
+                + "public class CommonProxy {}\n");
+        add(sources, pkg + ".ClientProxy", "package " + pkg + ";\n"
+                + "public class ClientProxy extends CommonProxy {}\n");
+        add(sources, pkg + ".ModEvent", "package " + pkg + ";\n"
+                + "@" + common + ".eventhandler.Cancelable\n"
+                + "public class ModEvent extends " + common + ".eventhandler.Event {}\n");
+
+        for (int c = 0; c < handlerClasses; c++) {
+            StringBuilder handler = new StringBuilder();
+            handler.append("package ").append(pkg).append(";\n");
+            handler.append("import ").append(common).append(".eventhandler.SubscribeEvent;\n");
+            handler.append("public class Handler").append(c).append(" {\n");
+            for (int h = 0; h < handlers; h++) {
+                handler.append("    @SubscribeEvent public void on").append(h).append("(ModEvent event) {}\n");
+            }
+            handler.append("}\n");
+            add(sources, pkg + ".Handler" + c, handler.toString());
+        }
+
+        StringBuilder blocksClass = new StringBuilder();
+        blocksClass.append("package ").append(pkg).append(";\n");
+        blocksClass.append("import mnm.mods.kappa.blocks.*;\n");
+        blocksClass.append("public class ModBlocks {\n");
+        for (int b = 0; b < blocks; b++) {
+            blocksClass.append("    @BlockDef(namespace = \"").append(modid).append("\", blockname = \"block")
+                    .append(b).append("\", variants = {");
+            for (int v = 0; v < variants; v++) {
+                if (v > 0) {
+                    blocksClass.append(", ");
+                }
+                blocksClass.append("@BlockVariant(variant = \"variant=").append(v).append("\", yaw = ")
+                        .append(v % 4 * 90).append(")");
+            }
+            blocksClass.append("})\n");
+            blocksClass.append("    public static Object block").append(b).append(";\n");
+        }
+        blocksClass.append("}\n");
+        add(sources, pkg + ".ModBlocks", blocksClass.toString());
+    }
+
+    private static void add(List<JavaFileObject> sources, String name, final String source) {
+        URI uri = URI.create("string:///" + name.replace('.', '/') + JavaFileObject.Kind.SOURCE.extension);
+        sources.add(new SimpleJavaFileObject(uri, JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) throws IOException {
+                return source;
+            }
+        });
+    }
+}
@@ -0,0 +1,75 @@
+package mnm.mods.kappa;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+
+/**
+ * An index of the annotated members of each type for a round. It is built in a
+ * single pass over the annotated elements and answers lookups by owner and
+ * annotation in constant time. Use it for rules which depend on how many
+ * members of a type share an annotation.
+ *
+ * @author Matthew Messinger
+ */
+public final class AnnotationIndex {
+
+    private final Map<Element, Map<TypeElement, List<Element>>> index = new HashMap<>();
+
+    /**
+     * Adds the elements annotated with an annotation to the index.
+     *
+     * @param annotation The annotation
+     * @param elements The elements annotated with it
+     */
+    public void addAll(TypeElement annotation, Iterable<? extends Element> elements) {
+        for (Element element : elements) {
+            Element owner = element.getEnclosingElement();
+            Map<TypeElement, List<Element>> members = index.get(owner);
+            if (members == null) {
+                members = new HashMap<>();
+                index.put(owner, members);
+            }
+            List<Element> list = members.get(annotation);
+            if (list == null) {
+                list = new ArrayList<>(1);
+                members.put(annotation, list);
+            }
+            list.add(element);
+        }
+    }
+
+    /**
+     * Gets the members of a type which have an annotation.
+     *
+     * @param owner The type
+     * @param annotation The annotation
+     * @return The annotated members, or an empty list
+     */
+    public List<Element> getAnnotated(Element owner, TypeElement annotation) {
+        Map<TypeElement, List<Element>> members = index.get(owner);
+        if (members != null) {
+            List<Element> list = members.get(annotation);
+            if (list != null) {
+                return Collections.unmodifiableList(list);
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Counts the members of a type which have an annotation.
+     *
+     * @param owner The type
+     * @param annotation The annotation
+     * @return The number of annotated members
+     */
+    public int count(Element owner, TypeElement annotation) {
+        return getAnnotated(owner, annotation).size();
+    }
+}
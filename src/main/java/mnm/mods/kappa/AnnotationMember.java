@@ -0,0 +1,54 @@
+package mnm.mods.kappa;
+
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.ExecutableElement;
+
+/**
+ * A typed view of one member of an annotation type. The member is resolved
+ * once, then its value is read straight from each mirror, falling back to the
+ * member's default.
+ *
+ * @author Matthew Messinger
+ * @param <T> The type of the value
+ * @see ProcessingUtils#getMember(javax.lang.model.element.TypeElement, String,
+ *      Class)
+ */
+public final class AnnotationMember<T> {
+
+    private final ExecutableElement member;
+    private final Class<T> type;
+
+    AnnotationMember(ExecutableElement member, Class<T> type) {
+        this.member = member;
+        this.type = type;
+    }
+
+    /**
+     * Gets the value of this member from an annotation.
+     *
+     * @param annotation The annotation
+     * @return The explicit value, or the default if there isn't one
+     */
+    public AnnotationValue getValue(AnnotationMirror annotation) {
+        AnnotationValue value = annotation.getElementValues().get(member);
+        return value != null ? value : member.getDefaultValue();
+    }
+
+    /**
+     * Gets the value of this member from an annotation as its type.
+     *
+     * @param annotation The annotation
+     * @return The value
+     */
+    public T get(AnnotationMirror annotation) {
+        return type.cast(getValue(annotation).getValue());
+    }
+
+    /**
+     * @return The member's method element
+     */
+    public ExecutableElement getElement() {
+        return member;
+    }
+}
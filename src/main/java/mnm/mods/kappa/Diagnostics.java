@@ -0,0 +1,322 @@
+package mnm.mods.kappa;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Collects the {@link Messages} printed while processing. Identical messages
+ * on the same element are only printed once, and the number printed for each
+ * rule and each compilation unit is capped. The prefix and suffix are kept as
+ * the objects they were given as, and duplicates are found by comparing them,
+ * so only messages which are printed or reported are formatted. What was held back is summarized when processing is over,
+ * and a report can be written for tools to read.
+ *
+ * @author Matthew Messinger
+ */
+public final class Diagnostics {
+
+    private final Messager messager;
+    private final Filer filer;
+    private final int maxPerRule;
+    private final int maxPerUnit;
+    private final String reportFormat;
+    private final Metrics metrics;
+
+    private final Set<Entry> seen = new HashSet<>();
+    private final Map<Messages, Counter> rules = new EnumMap<>(Messages.class);
+    private final Map<Element, Counter> units = new IdentityHashMap<>();
+    // every unique diagnostic, only kept for the report
+    private final List<Entry> entries = new ArrayList<>();
+
+    public Diagnostics(ProcessingEnvironment processingEnv) {
+        this(processingEnv, Metrics.DISABLED);
+    }
+
+    public Diagnostics(ProcessingEnvironment processingEnv, Metrics metrics) {
+        this.metrics = metrics;
+        this.messager = processingEnv.getMessager();
+        this.filer = processingEnv.getFiler();
+        this.maxPerRule = KappaOptions.getInt(processingEnv, KappaOptions.MAX_PER_RULE, 100);
+        this.maxPerUnit = KappaOptions.getInt(processingEnv, KappaOptions.MAX_PER_UNIT, 50);
+        this.reportFormat = processingEnv.getOptions().get(KappaOptions.REPORT);
+    }
+
+    /**
+     * Reports a message. It is dropped if it was already reported for the
+     * element, or held back if its rule or compilation unit has reached its
+     * cap.
+     *
+     * @param message The message
+     * @param prefix The text before the message, formatted when it is printed
+     * @param suffix The text after the message, formatted when it is printed
+     * @param element The element
+     * @param annotation The annotation, or null
+     * @param value The annotation value, or null
+     */
+    public void report(Messages message, Object prefix, Object suffix, Element element,
+            AnnotationMirror annotation, AnnotationValue value) {
+        Entry entry = new Entry(message, prefix, suffix, element, annotation, value);
+        if (!seen.add(entry)) {
+            return;
+        }
+        metrics.diagnostic();
+        if (reportFormat != null) {
+            entries.add(entry);
+        }
+        Counter rule = counter(rules, message, null);
+        Element unitElement = getUnit(element);
+        Counter unit = counter(units, unitElement, unitElement);
+        if (maxPerRule > 0 && rule.printed >= maxPerRule) {
+            rule.suppress(message.getKind());
+        } else if (maxPerUnit > 0 && unit.printed >= maxPerUnit) {
+            unit.suppress(message.getKind());
+        } else {
+            rule.printed++;
+            unit.printed++;
+            print(entry);
+        }
+    }
+
+    /**
+     * Prints a summary of held back messages and writes the report if one was
+     * requested. Call once when processing is over.
+     *
+     * @param processor The name of the processor
+     */
+    public void finish(String processor) {
+        for (Map.Entry<Messages, Counter> rule : rules.entrySet()) {
+            Counter counter = rule.getValue();
+            if (counter.suppressed > 0) {
+                messager.printMessage(counter.kind, counter.suppressed + " more '"
+                        + rule.getKey().format("...", "").trim() + "' messages were suppressed");
+            }
+        }
+        for (Counter counter : units.values()) {
+            if (counter.suppressed > 0) {
+                messager.printMessage(counter.kind, counter.suppressed
+                        + " more messages in this file were suppressed", counter.element);
+            }
+        }
+        if (reportFormat != null) {
+            writeReport(processor);
+        }
+    }
+
+    private void print(Entry entry) {
+        String text = entry.message.format(entry.prefix, entry.suffix);
+        Kind kind = entry.message.getKind();
+        if (entry.value != null) {
+            messager.printMessage(kind, text, entry.element, entry.annotation, entry.value);
+        } else if (entry.annotation != null) {
+            messager.printMessage(kind, text, entry.element, entry.annotation);
+        } else {
+            messager.printMessage(kind, text, entry.element);
+        }
+    }
+
+    private static <K> Counter counter(Map<K, Counter> map, K key, Element element) {
+        Counter counter = map.get(key);
+        if (counter == null) {
+            counter = new Counter(element);
+            map.put(key, counter);
+        }
+        return counter;
+    }
+
+    private static Element getUnit(Element element) {
+        Element unit = element;
+        Element owner = unit.getEnclosingElement();
+        while (owner != null && owner.getKind() != ElementKind.PACKAGE) {
+            unit = owner;
+            owner = unit.getEnclosingElement();
+        }
+        return unit;
+    }
+
+    private static String getName(Element element) {
+        if (element instanceof TypeElement) {
+            return ((TypeElement) element).getQualifiedName().toString();
+        }
+        Element unit = getUnit(element);
+        if (unit == element) {
+            return element.toString();
+        }
+        return getName(unit) + "#" + element.getSimpleName();
+    }
+
+    private void writeReport(String processor) {
+        boolean sarif = "sarif".equalsIgnoreCase(reportFormat);
+        String name = processor + (sarif ? ".sarif" : ".json");
+        Writer writer = null;
+        try {
+            FileObject file = filer.createResource(StandardLocation.CLASS_OUTPUT, "",
+                    "META-INF/kappa/" + name);
+            writer = file.openWriter();
+            JsonEmitter json = new JsonEmitter(writer);
+            if (sarif) {
+                writeSarif(json);
+            } else {
+                writeJson(json, processor);
+            }
+            writer.flush();
+        } catch (IOException e) {
+            messager.printMessage(Kind.WARNING, "Unable to write report " + name + ": " + e);
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    // silence
+                }
+            }
+        }
+    }
+
+    private void writeJson(JsonEmitter json, String processor) throws IOException {
+        json.beginObject();
+        json.name("processor").value(processor);
+        json.name("diagnostics").beginArray();
+        for (Entry entry : entries) {
+            json.beginObject();
+            json.name("rule").value(entry.message.name());
+            json.name("kind").value(entry.message.getKind().name());
+            json.name("message").value(entry.message.format(entry.prefix, entry.suffix));
+            json.name("element").value(getName(entry.element));
+            json.name("unit").value(getName(getUnit(entry.element)));
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject();
+    }
+
+    private void writeSarif(JsonEmitter json) throws IOException {
+        Map<Messages, Integer> ruleIndex = new LinkedHashMap<>();
+        for (Entry entry : entries) {
+            if (!ruleIndex.containsKey(entry.message)) {
+                ruleIndex.put(entry.message, ruleIndex.size());
+            }
+        }
+        json.beginObject();
+        json.name("version").value("2.1.0");
+        json.name("$schema").value("https://json.schemastore.org/sarif-2.1.0.json");
+        json.name("runs").beginArray().beginObject();
+        json.name("tool").beginObject().name("driver").beginObject();
+        json.name("name").value("Kappa");
+        json.name("rules").beginArray();
+        for (Messages rule : ruleIndex.keySet()) {
+            json.beginObject();
+            json.name("id").value(rule.name());
+            json.name("shortDescription").beginObject()
+                    .name("text").value(rule.format("Element", "").trim())
+                    .endObject();
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject().endObject();
+        json.name("results").beginArray();
+        for (Entry entry : entries) {
+            json.beginObject();
+            json.name("ruleId").value(entry.message.name());
+            json.name("ruleIndex").value(ruleIndex.get(entry.message));
+            json.name("level").value(getLevel(entry.message.getKind()));
+            json.name("message").beginObject()
+                    .name("text").value(entry.message.format(entry.prefix, entry.suffix))
+                    .endObject();
+            json.name("locations").beginArray().beginObject();
+            json.name("logicalLocations").beginArray().beginObject();
+            json.name("fullyQualifiedName").value(getName(entry.element));
+            json.endObject().endArray();
+            json.endObject().endArray();
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject().endArray();
+        json.endObject();
+    }
+
+    private static String getLevel(Kind kind) {
+        switch (kind) {
+        case ERROR:
+            return "error";
+        case WARNING:
+        case MANDATORY_WARNING:
+            return "warning";
+        default:
+            return "note";
+        }
+    }
+
+    private static class Counter {
+        private final Element element;
+        private int printed;
+        private int suppressed;
+        // the most severe kind held back
+        private Kind kind = Kind.NOTE;
+
+        private Counter(Element element) {
+            this.element = element;
+        }
+
+        private void suppress(Kind kind) {
+            suppressed++;
+            if (kind.compareTo(this.kind) < 0) {
+                this.kind = kind;
+            }
+        }
+    }
+
+    private static class Entry {
+        private final Messages message;
+        private final Object prefix;
+        private final Object suffix;
+        private final Element element;
+        private final AnnotationMirror annotation;
+        private final AnnotationValue value;
+
+        private Entry(Messages message, Object prefix, Object suffix, Element element,
+                AnnotationMirror annotation, AnnotationValue value) {
+            this.message = message;
+            this.prefix = prefix;
+            this.suffix = suffix;
+            this.element = element;
+            this.annotation = annotation;
+            this.value = value;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(message, prefix, suffix, System.identityHashCode(element));
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Entry)) {
+                return false;
+            }
+            Entry other = (Entry) obj;
+            return message == other.message && element == other.element
+                    && prefix.equals(other.prefix) && suffix.equals(other.suffix);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package mnm.mods.kappa;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Target;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Types;
+
+/**
+ * An immutable copy of what the rules of a {@link RulePlan} read from an
+ * element. Snapshots are captured on the compiler's thread and can then be
+ * checked on any thread without touching javac. Types are kept as their names
+ * and the erased names of everything they are a subtype of.
+ *
+ * @author Matthew Messinger
+ */
+final class ElementSnapshot {
+
+    final ElementKind kind;
+    final Set<Modifier> modifiers;
+    final ElementType elementType;
+    // An annotation type's own @Target, or null
+    final Set<ElementType> declaredTargets;
+    // only captured when a rule reads them
+    final List<TypeSnapshot> parameters;
+    final TypeSnapshot returnType;
+    final TypeSnapshot type;
+
+    private ElementSnapshot(Element element, List<TypeSnapshot> parameters, TypeSnapshot returnType,
+            TypeSnapshot type) {
+        this.kind = element.getKind();
+        Set<Modifier> modifiers = EnumSet.noneOf(Modifier.class);
+        modifiers.addAll(element.getModifiers());
+        this.modifiers = Collections.unmodifiableSet(modifiers);
+        this.elementType = ProcessingUtils.getElementType(element);
+        Target target = kind == ElementKind.ANNOTATION_TYPE ? element.getAnnotation(Target.class) : null;
+        if (target != null) {
+            Set<ElementType> targets = EnumSet.noneOf(ElementType.class);
+            targets.addAll(Arrays.asList(target.value()));
+            this.declaredTargets = Collections.unmodifiableSet(targets);
+        } else {
+            this.declaredTargets = null;
+        }
+        this.parameters = parameters;
+        this.returnType = returnType;
+        this.type = type;
+    }
+
+    /**
+     * A type's name or the erased names of its supertypes, whichever its rule
+     * reads.
+     */
+    static final class TypeSnapshot {
+        final String name;
+        private final Set<String> supertypes;
+
+        private TypeSnapshot(String name, Set<String> supertypes) {
+            this.name = name;
+            this.supertypes = supertypes;
+        }
+
+        /**
+         * @param erasure The erased name of a type
+         * @return True if this type is a subtype of it, or the same type
+         */
+        boolean isSubtypeOf(String erasure) {
+            return supertypes.contains(erasure);
+        }
+    }
+
+    /**
+     * Captures snapshots. Supertypes are only walked once per type. Only use
+     * it on the compiler's thread.
+     */
+    static final class Factory {
+
+        private static final String[] ARRAY_SUPERTYPES = { "java.lang.Object",
+                "java.lang.Cloneable", "java.io.Serializable" };
+
+        private final Types typeUtils;
+        private final Map<TypeElement, Set<String>> closures = new IdentityHashMap<>();
+        private final Map<TypeKind, Set<String>> primitives = new EnumMap<>(TypeKind.class);
+
+        Factory(Types typeUtils) {
+            this.typeUtils = typeUtils;
+        }
+
+        /**
+         * Captures an element.
+         *
+         * @param element The element
+         * @param signature True to capture the parameters and return type of
+         *            executables
+         * @param type True to capture the type of type elements
+         * @return The snapshot
+         */
+        ElementSnapshot capture(Element element, boolean signature, boolean type) {
+            List<TypeSnapshot> parameters = null;
+            TypeSnapshot returnType = null;
+            if (signature && element instanceof ExecutableElement) {
+                ExecutableElement method = (ExecutableElement) element;
+                List<? extends VariableElement> params = method.getParameters();
+                parameters = new ArrayList<>(params.size());
+                for (VariableElement param : params) {
+                    parameters.add(new TypeSnapshot(null, getSupertypes(param.asType())));
+                }
+                parameters = Collections.unmodifiableList(parameters);
+                TypeMirror ret = method.getReturnType();
+                returnType = new TypeSnapshot(ret.toString(), null);
+            }
+            TypeSnapshot typeSnapshot = null;
+            if (type && element instanceof TypeElement) {
+                typeSnapshot = new TypeSnapshot(null, getClosure((TypeElement) element));
+            }
+            return new ElementSnapshot(element, parameters, returnType, typeSnapshot);
+        }
+
+        private Set<String> getSupertypes(TypeMirror type) {
+            TypeKind kind = type.getKind();
+            if (kind.isPrimitive()) {
+                return getPrimitiveSupertypes(type);
+            }
+            if (kind == TypeKind.ARRAY) {
+                Set<String> supertypes = new HashSet<>(Arrays.asList(ARRAY_SUPERTYPES));
+                TypeMirror component = ((ArrayType) type).getComponentType();
+                if (component.getKind().isPrimitive()) {
+                    supertypes.add(component + "[]");
+                } else {
+                    for (String supertype : getSupertypes(component)) {
+                        supertypes.add(supertype + "[]");
+                    }
+                }
+                return supertypes;
+            }
+            TypeMirror erasure = typeUtils.erasure(type);
+            Element element = typeUtils.asElement(erasure);
+            if (element instanceof TypeElement) {
+                return getClosure((TypeElement) element);
+            }
+            return Collections.singleton(erasure.toString());
+        }
+
+        private Set<String> getPrimitiveSupertypes(TypeMirror type) {
+            Set<String> supertypes = primitives.get(type.getKind());
+            if (supertypes == null) {
+                supertypes = new HashSet<>();
+                // primitive widening counts as subtyping
+                for (TypeKind kind : TypeKind.values()) {
+                    if (kind.isPrimitive() && typeUtils.isSubtype(type, typeUtils.getPrimitiveType(kind))) {
+                        supertypes.add(kind.name().toLowerCase());
+                    }
+                }
+                primitives.put(type.getKind(), supertypes);
+            }
+            return supertypes;
+        }
+
+        private Set<String> getClosure(TypeElement element) {
+            Set<String> closure = closures.get(element);
+            if (closure == null) {
+                closure = new HashSet<>();
+                closure.add(element.getQualifiedName().toString());
+                for (TypeMirror supertype : typeUtils.directSupertypes(typeUtils.erasure(element.asType()))) {
+                    Element superElement = typeUtils.asElement(supertype);
+                    if (superElement instanceof TypeElement) {
+                        closure.addAll(getClosure((TypeElement) superElement));
+                    }
+                }
+                closure = Collections.unmodifiableSet(closure);
+                closures.put(element, closure);
+            }
+            return closure;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package mnm.mods.kappa;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Commits {@code mnm.mods.kappa.Section} flight recorder events. Kappa is
+ * built for Java 7, so the event type is defined at runtime through
+ * {@code jdk.jfr.EventFactory} by reflection. It is only defined once a
+ * recording is found running, so compilations without one don't load JFR.
+ * Nothing happens on JVMs without JFR.
+ *
+ * @author Matthew Messinger
+ */
+final class JfrEvents {
+
+    private final Object factory;
+    private final Method newEvent;
+    private final Method set;
+    private final Method commit;
+
+    private JfrEvents(Object factory, Method newEvent, Method set, Method commit) {
+        this.factory = factory;
+        this.newEvent = newEvent;
+        this.set = set;
+        this.commit = commit;
+    }
+
+    /**
+     * Gets the events if JFR is available and a recording is running.
+     *
+     * @return The events, or null
+     */
+    static JfrEvents getIfRecording() {
+        if (Recorder.IS_INITIALIZED == null) {
+            return null;
+        }
+        try {
+            if (!(Boolean) Recorder.IS_INITIALIZED.invoke(null)) {
+                return null;
+            }
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+        return Factory.INSTANCE;
+    }
+
+    /**
+     * Commits an event for a section's numbers in one round.
+     *
+     * @param processor The processor
+     * @param round The round number
+     * @param section The section numbers for the round
+     */
+    void commit(String processor, int round, Metrics.Section section) {
+        try {
+            Object event = newEvent.invoke(factory);
+            set.invoke(event, 0, processor);
+            set.invoke(event, 1, section.name);
+            set.invoke(event, 2, round);
+            set.invoke(event, 3, section.calls);
+            set.invoke(event, 4, section.time);
+            set.invoke(event, 5, section.elements);
+            set.invoke(event, 6, section.diagnostics);
+            set.invoke(event, 7, section.bytes);
+            commit.invoke(event);
+        } catch (ReflectiveOperationException e) {
+            // recording isn't essential
+        }
+    }
+
+    private static JfrEvents create() {
+        try {
+            Class<?> annotationElement = Class.forName("jdk.jfr.AnnotationElement");
+            Class<?> valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor");
+            Class<?> eventFactory = Class.forName("jdk.jfr.EventFactory");
+            Class<?> event = Class.forName("jdk.jfr.Event");
+
+            Constructor<?> newAnnotation = annotationElement.getConstructor(Class.class, Object.class);
+            Constructor<?> newField = valueDescriptor.getConstructor(Class.class, String.class, List.class);
+
+            List<Object> annotations = Arrays.asList(
+                    newAnnotation.newInstance(annotation("jdk.jfr.Name"), "mnm.mods.kappa.Section"),
+                    newAnnotation.newInstance(annotation("jdk.jfr.Label"), "Kappa Section"),
+                    newAnnotation.newInstance(annotation("jdk.jfr.Category"), new String[] { "Kappa" }),
+                    newAnnotation.newInstance(annotation("jdk.jfr.Description"),
+                            "Work done by a section of a Kappa annotation processor in one round"));
+
+            Object timespan = newAnnotation.newInstance(annotation("jdk.jfr.Timespan"), "NANOSECONDS");
+            Object bytes = newAnnotation.newInstance(annotation("jdk.jfr.DataAmount"), "BYTES");
+            List<Object> none = Collections.emptyList();
+            List<Object> fields = new ArrayList<>();
+            fields.add(newField.newInstance(String.class, "processor", none));
+            fields.add(newField.newInstance(String.class, "section", none));
+            fields.add(newField.newInstance(int.class, "round", none));
+            fields.add(newField.newInstance(long.class, "calls", none));
+            fields.add(newField.newInstance(long.class, "time", Collections.singletonList(timespan)));
+            fields.add(newField.newInstance(long.class, "elements", none));
+            fields.add(newField.newInstance(long.class, "diagnostics", none));
+            fields.add(newField.newInstance(long.class, "bytes", Collections.singletonList(bytes)));
+
+            Object factory = eventFactory.getMethod("create", List.class, List.class)
+                    .invoke(null, annotations, fields);
+            return new JfrEvents(factory,
+                    eventFactory.getMethod("newEvent"),
+                    event.getMethod("set", int.class, Object.class),
+                    event.getMethod("commit"));
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            // no JFR
+            return null;
+        }
+    }
+
+    // Loaded when a recording is first checked for
+    private static class Recorder {
+        private static final Method IS_INITIALIZED = find();
+
+        private static Method find() {
+            try {
+                return Class.forName("jdk.jfr.FlightRecorder").getMethod("isInitialized");
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // no JFR
+                return null;
+            }
+        }
+    }
+
+    // Loaded when a recording is first found running
+    private static class Factory {
+        private static final JfrEvents INSTANCE = create();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Class<? extends Annotation> annotation(String name) throws ClassNotFoundException {
+        return (Class<? extends Annotation>) Class.forName(name);
+    }
+}
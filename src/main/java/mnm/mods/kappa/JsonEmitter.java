@@ -0,0 +1,163 @@
+package mnm.mods.kappa;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * A small pretty printing json writer which streams straight to a
+ * {@link Writer}. Only what Kappa's resources and reports need is supported.
+ * Nothing is buffered and no tree is built.
+ *
+ * @author Matthew Messinger
+ */
+public class JsonEmitter {
+
+    private static final String INDENT = "  ";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Writer out;
+    // whether the container at each depth has had a value written
+    private boolean[] nonEmpty = new boolean[8];
+    private int depth;
+    private boolean afterName;
+
+    public JsonEmitter(Writer out) {
+        this.out = out;
+    }
+
+    public JsonEmitter beginObject() throws IOException {
+        return open('{');
+    }
+
+    public JsonEmitter endObject() throws IOException {
+        return close('}');
+    }
+
+    public JsonEmitter beginArray() throws IOException {
+        return open('[');
+    }
+
+    public JsonEmitter endArray() throws IOException {
+        return close(']');
+    }
+
+    public JsonEmitter name(String name) throws IOException {
+        beforeValue();
+        string(name);
+        out.write(": ");
+        afterName = true;
+        return this;
+    }
+
+    public JsonEmitter value(String value) throws IOException {
+        beforeValue();
+        string(value);
+        return this;
+    }
+
+    public JsonEmitter value(int value) throws IOException {
+        beforeValue();
+        out.write(Integer.toString(value));
+        return this;
+    }
+
+    public JsonEmitter value(long value) throws IOException {
+        beforeValue();
+        out.write(Long.toString(value));
+        return this;
+    }
+
+    public JsonEmitter value(double value) throws IOException {
+        beforeValue();
+        out.write(Double.toString(value));
+        return this;
+    }
+
+    public JsonEmitter values(double... values) throws IOException {
+        beginArray();
+        for (double value : values) {
+            value(value);
+        }
+        return endArray();
+    }
+
+    private JsonEmitter open(char c) throws IOException {
+        beforeValue();
+        out.write(c);
+        if (++depth == nonEmpty.length) {
+            nonEmpty = Arrays.copyOf(nonEmpty, depth * 2);
+        }
+        nonEmpty[depth] = false;
+        return this;
+    }
+
+    private JsonEmitter close(char c) throws IOException {
+        boolean hadValues = nonEmpty[depth--];
+        if (hadValues) {
+            newline();
+        }
+        out.write(c);
+        return this;
+    }
+
+    private void beforeValue() throws IOException {
+        if (afterName) {
+            // value of a name/value pair
+            afterName = false;
+            return;
+        }
+        if (depth > 0) {
+            if (nonEmpty[depth]) {
+                out.write(',');
+            }
+            nonEmpty[depth] = true;
+            newline();
+        }
+    }
+
+    private void newline() throws IOException {
+        out.write('\n');
+        for (int i = 0; i < depth; i++) {
+            out.write(INDENT);
+        }
+    }
+
+    private void string(String s) throws IOException {
+        out.write('"');
+        int start = 0;
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            String escape;
+            if (c == '"') {
+                escape = "\\\"";
+            } else if (c == '\\') {
+                escape = "\\\\";
+            } else if (c == '\n') {
+                escape = "\\n";
+            } else if (c == '\r') {
+                escape = "\\r";
+            } else if (c == '\t') {
+                escape = "\\t";
+            } else if (c < 0x20 || c == 0x2028 || c == 0x2029) {
+                escape = null;
+            } else {
+                continue;
+            }
+            out.write(s, start, i - start);
+            if (escape != null) {
+                out.write(escape);
+            } else {
+                out.write("\\u");
+                out.write(HEX[c >> 12 & 0xf]);
+                out.write(HEX[c >> 8 & 0xf]);
+                out.write(HEX[c >> 4 & 0xf]);
+                out.write(HEX[c & 0xf]);
+            }
+            start = i + 1;
+        }
+        out.write(s, start, length - start);
+        out.write('"');
+    }
+}
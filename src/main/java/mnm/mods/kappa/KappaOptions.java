@@ -0,0 +1,141 @@
+package mnm.mods.kappa;
+
+import java.util.Map;
+
+import javax.annotation.processing.ProcessingEnvironment;
+
+/**
+ * The processor options understood by Kappa. Pass them to javac with
+ * {@code -A<option>[=<value>]}.
+ *
+ * @author Matthew Messinger
+ */
+public final class KappaOptions {
+
+    /**
+     * Compares generated resources against the ones already in the class
+     * output and leaves them untouched if they are the same. This reads the
+     * existing files, which Gradle's incremental processing doesn't allow.
+     */
+    public static final String SKIP_UNCHANGED = "kappa.skipUnchanged";
+
+    /**
+     * Prints statistics about Kappa's caches when processing is over.
+     */
+    public static final String STATS = "kappa.stats";
+
+    /**
+     * Writes a report of every diagnostic to {@code META-INF/kappa} in the
+     * class output. Either {@code json} or {@code sarif}. The report has no
+     * originating elements, so Gradle does a full recompile when it is on.
+     */
+    public static final String REPORT = "kappa.report";
+
+    /**
+     * The most messages printed for one rule. Defaults to 100. Use 0 for no
+     * limit.
+     */
+    public static final String MAX_PER_RULE = "kappa.maxPerRule";
+
+    /**
+     * The most messages printed for one compilation unit. Defaults to 50. Use
+     * 0 for no limit.
+     */
+    public static final String MAX_PER_UNIT = "kappa.maxPerUnit";
+
+    /**
+     * Records the time, elements, diagnostics and bytes written of each
+     * processor section and writes a summary for each processor to this
+     * directory when processing is over.
+     */
+    public static final String METRICS = "kappa.metrics";
+
+    /**
+     * Checks meta annotation rules on a fork join pool. Elements are copied
+     * into snapshots first, and types are compared by their erased names. The
+     * value is the number of threads, which defaults to the number of
+     * processors.
+     */
+    public static final String PARALLEL = "kappa.parallel";
+
+    /**
+     * Writes generated block resources on a background thread. The value is
+     * the most writes waiting at once, which defaults to 64.
+     */
+    public static final String ASYNC_WRITES = "kappa.asyncWrites";
+
+    /**
+     * Only generates one block model for each model type and set of
+     * textures. Block states and item models of the variants sharing it point
+     * at the first one generated.
+     */
+    public static final String DEDUP_MODELS = "kappa.dedupModels";
+
+    /**
+     * The project's resource roots, separated by the path separator. Each is a
+     * directory or zip containing {@code assets}. Block textures are checked
+     * against them.
+     */
+    public static final String RESOURCE_ROOTS = "kappa.resourceRoots";
+
+    /**
+     * Generates a class for each block namespace, e.g.
+     * {@code ModidBlockTable}, with a method which registers the item models of
+     * all its blocks and read-only lookups of its block names and item models.
+     */
+    public static final String BLOCK_TABLES = "kappa.blockTables";
+
+    /**
+     * Writes an index of the FML annotations in each class to
+     * {@code META-INF/kappa/fml}, which can be read at runtime instead of
+     * scanning the classes.
+     */
+    public static final String FML_INDEX = "kappa.fmlIndex";
+
+    /**
+     * Generates a class of event listeners for each class with
+     * {@code @SubscribeEvent} methods, which call them without reflection.
+     */
+    public static final String EVENT_INVOKERS = "kappa.eventInvokers";
+
+    /**
+     * Generates a factory for each mod with {@code @SidedProxy} fields, which
+     * creates and installs its proxies without reflection.
+     */
+    public static final String PROXY_FACTORIES = "kappa.proxyFactories";
+
+    private KappaOptions() {}
+
+    /**
+     * Tests if a boolean option is enabled. An option given without a value
+     * counts as enabled.
+     *
+     * @param processingEnv The processing environment
+     * @param option The option name
+     * @return True if it is set and not {@code false}
+     */
+    public static boolean isEnabled(ProcessingEnvironment processingEnv, String option) {
+        Map<String, String> options = processingEnv.getOptions();
+        return options.containsKey(option) && !"false".equals(options.get(option));
+    }
+
+    /**
+     * Gets an integer option.
+     *
+     * @param processingEnv The processing environment
+     * @param option The option name
+     * @param def The default if it isn't set or isn't a number
+     * @return The value
+     */
+    public static int getInt(ProcessingEnvironment processingEnv, String option, int def) {
+        String value = processingEnv.getOptions().get(option);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                // use the default
+            }
+        }
+        return def;
+    }
+}
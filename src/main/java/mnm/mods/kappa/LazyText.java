@@ -0,0 +1,83 @@
+package mnm.mods.kappa;
+
+import java.util.Arrays;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+
+/**
+ * Text for a message which is only built when the message is printed. Texts
+ * are equal when they are made the same way from the same objects, so
+ * duplicate messages are found without formatting them.
+ *
+ * @author Matthew Messinger
+ */
+final class LazyText {
+
+    private static final int TYPE_NAME = 0;
+    private static final int PARAMETERS = 1;
+    private static final int ANNOTATION = 2;
+
+    private final int kind;
+    private final Object value;
+
+    private LazyText(int kind, Object value) {
+        this.kind = kind;
+        this.value = value;
+    }
+
+    /**
+     * @param element The element
+     * @return Its kind and name, e.g. {@code Method init}
+     */
+    static LazyText typeName(Element element) {
+        return new LazyText(TYPE_NAME, element);
+    }
+
+    /**
+     * @param types The parameter types
+     * @return The parameters, e.g. {@code (int, java.lang.String)}
+     */
+    static LazyText parameters(TypeMirror[] types) {
+        return new LazyText(PARAMETERS, types);
+    }
+
+    /**
+     * @param annotation The annotation type
+     * @return The annotation as it is written, e.g. {@code @Mod}
+     */
+    static LazyText annotation(TypeElement annotation) {
+        return new LazyText(ANNOTATION, annotation);
+    }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+        case TYPE_NAME:
+            return ProcessingUtils.getElementTypeName((Element) value);
+        case PARAMETERS:
+            return ProcessingUtils.generateParameters((TypeMirror[]) value);
+        default:
+            return "@" + ((TypeElement) value).getSimpleName();
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return kind * 31 + (kind == PARAMETERS ? Arrays.hashCode((Object[]) value) : value.hashCode());
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof LazyText)) {
+            return false;
+        }
+        LazyText other = (LazyText) obj;
+        if (kind != other.kind) {
+            return false;
+        }
+        return kind == PARAMETERS ? Arrays.equals((Object[]) value, (Object[]) other.value)
+                : value.equals(other.value);
+    }
+}
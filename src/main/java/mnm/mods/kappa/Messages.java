@@ -1,6 +1,5 @@
 package mnm.mods.kappa;
 
-import javax.annotation.processing.Messager;
 import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.element.AnnotationValue;
 import javax.lang.model.element.Element;
@@ -15,6 +14,8 @@ public enum Messages {
     NON_FINAL(Kind.ERROR, " must be final"),
     ABSTRACT(Kind.ERROR, " cannot be abstract"),
     NON_ABSTRACT(Kind.ERROR, " must be abstract"),
+    REQUIRED_MODIFIER(Kind.ERROR, " must be "),
+    FORBIDDEN_MODIFIER(Kind.ERROR, " cannot be "),
     // methods
     MISSING_CONSTRUCTOR(Kind.ERROR, " is missing required constructor with parameters "),
     INVALID_PARAMETERS(Kind.ERROR, " has invalid parameters. Must be "),
@@ -24,6 +25,7 @@ public enum Messages {
     // types
     NOT_SUBTYPE(Kind.ERROR, " needs to be a subtype of "),
     NOT_ASSIGNABLE(Kind.ERROR, " needs to be assignable to "),
+    INVALID_TARGET(Kind.ERROR, " has an invalid target. Must be one of "),
     // warnings
     NOT_FOUND(Kind.WARNING, " not found"),
     NOT_SAME(Kind.WARNING, " should be of type "),
@@ -37,18 +39,38 @@ public enum Messages {
         this.message = message;
     }
 
-    public void printMessage(Messager messager, String prefix, String suffix, Element element) {
-        messager.printMessage(kind, prefix + message + suffix, element);
+    /**
+     * @return The kind of diagnostic this message is
+     */
+    public Kind getKind() {
+        return kind;
     }
 
-    public void printMessage(Messager messager, String prefix, String suffix, Element type,
+    /**
+     * Formats this message for an element. The prefix and suffix are
+     * converted with {@link String#valueOf(Object)}, so they can be objects
+     * which are only turned into text here.
+     *
+     * @param prefix The text before the message, usually the element
+     * @param suffix The text after the message
+     * @return The full message
+     */
+    public String format(Object prefix, Object suffix) {
+        return prefix + message + suffix;
+    }
+
+    public void printMessage(Diagnostics diagnostics, Object prefix, Object suffix, Element element) {
+        diagnostics.report(this, prefix, suffix, element, null, null);
+    }
+
+    public void printMessage(Diagnostics diagnostics, Object prefix, Object suffix, Element type,
             AnnotationMirror annotation) {
-        messager.printMessage(kind, prefix + message + suffix, type, annotation);
+        diagnostics.report(this, prefix, suffix, type, annotation, null);
     }
 
-    public void printMessage(Messager messager, String prefix, String suffix, Element type,
+    public void printMessage(Diagnostics diagnostics, Object prefix, Object suffix, Element type,
             AnnotationMirror annotation, AnnotationValue value) {
-        messager.printMessage(kind, prefix + message + suffix, type, annotation, value);
+        diagnostics.report(this, prefix, suffix, type, annotation, value);
     }
 
 }
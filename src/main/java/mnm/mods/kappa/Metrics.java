@@ -0,0 +1,234 @@
+package mnm.mods.kappa;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.tools.Diagnostic.Kind;
+
+/**
+ * Records the time spent, elements visited, diagnostics printed and bytes
+ * written by each section of a processor. Sections are named, nest, and their
+ * times include the sections inside them.
+ * <p>
+ * Metrics are recorded when {@link KappaOptions#METRICS} is set, which writes
+ * a summary when processing is over, or when a flight recording is running.
+ * Each round's numbers are committed as JFR events if JFR is available.
+ * Otherwise every method returns straight away.
+ *
+ * @author Matthew Messinger
+ */
+public final class Metrics {
+
+    /**
+     * Metrics which record nothing.
+     */
+    public static final Metrics DISABLED = new Metrics(null, null, null, null);
+
+    private final String processor;
+    private final File output;
+    private final Messager messager;
+    private final JfrEvents jfr;
+    private final boolean enabled;
+
+    private final Map<String, Section> sections = new LinkedHashMap<>();
+    private Section[] stack = new Section[8];
+    private long[] starts = new long[8];
+    private int depth;
+    private int round;
+
+    private Metrics(String processor, File output, Messager messager, JfrEvents jfr) {
+        this.processor = processor;
+        this.output = output;
+        this.messager = messager;
+        this.jfr = jfr;
+        this.enabled = output != null || jfr != null;
+    }
+
+    /**
+     * Creates the metrics for a processor.
+     *
+     * @param processingEnv The processing environment
+     * @param processor The processor name
+     * @return The metrics, or {@link #DISABLED} if nothing would use them
+     */
+    public static Metrics create(ProcessingEnvironment processingEnv, String processor) {
+        String path = processingEnv.getOptions().get(KappaOptions.METRICS);
+        File output = path == null ? null : new File(path, processor + ".txt");
+        JfrEvents jfr = JfrEvents.getIfRecording();
+        if (output == null && jfr == null) {
+            return DISABLED;
+        }
+        return new Metrics(processor, output, processingEnv.getMessager(), jfr);
+    }
+
+    /**
+     * @return True if anything is recorded
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts timing a section. Must be followed by {@link #end()}.
+     *
+     * @param name The section name
+     */
+    public void begin(String name) {
+        if (!enabled) {
+            return;
+        }
+        Section section = sections.get(name);
+        if (section == null) {
+            section = new Section(name);
+            sections.put(name, section);
+        }
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+            starts = Arrays.copyOf(starts, depth * 2);
+        }
+        stack[depth] = section;
+        starts[depth++] = System.nanoTime();
+    }
+
+    /**
+     * Stops timing the current section, counting one element.
+     */
+    public void end() {
+        end(1);
+    }
+
+    /**
+     * Stops timing the current section.
+     *
+     * @param elements The number of elements it visited
+     */
+    public void end(int elements) {
+        if (!enabled || depth == 0) {
+            return;
+        }
+        long time = System.nanoTime() - starts[--depth];
+        Section section = stack[depth];
+        stack[depth] = null;
+        section.calls++;
+        section.time += time;
+        section.elements += elements;
+    }
+
+    /**
+     * Counts a diagnostic against the current section.
+     */
+    public void diagnostic() {
+        if (enabled && depth > 0) {
+            stack[depth - 1].diagnostics++;
+        }
+    }
+
+    /**
+     * Counts bytes written by the current section.
+     *
+     * @param bytes The number of bytes
+     */
+    public void written(long bytes) {
+        if (enabled && depth > 0) {
+            stack[depth - 1].bytes += bytes;
+        }
+    }
+
+    /**
+     * Commits the round's numbers as JFR events. Call at the end of every
+     * round.
+     */
+    public void endRound() {
+        if (!enabled) {
+            return;
+        }
+        if (jfr != null) {
+            for (Section section : sections.values()) {
+                Section delta = section.sinceLastRound();
+                if (delta.calls > 0) {
+                    jfr.commit(processor, round, delta);
+                }
+                section.mark();
+            }
+        }
+        round++;
+    }
+
+    /**
+     * Writes the summary. Call once when processing is over.
+     */
+    public void finish() {
+        if (output == null) {
+            return;
+        }
+        PrintWriter writer = null;
+        try {
+            File dir = output.getParentFile();
+            if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Unable to create " + dir);
+            }
+            writer = new PrintWriter(output, StandardCharsets.UTF_8.name());
+            writer.printf("%-32s %10s %12s %10s %12s %12s%n", processor, "calls", "time ms",
+                    "elements", "diagnostics", "bytes");
+            for (Section section : sections.values()) {
+                writer.printf("%-32s %10d %12.3f %10d %12d %12d%n", section.name, section.calls,
+                        section.time / 1e6, section.elements, section.diagnostics, section.bytes);
+            }
+        } catch (IOException e) {
+            messager.printMessage(Kind.WARNING, "Unable to write metrics to " + output + ": " + e);
+        } finally {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
+
+    /**
+     * The numbers recorded for one section.
+     */
+    static class Section {
+        final String name;
+        long calls;
+        long time;
+        long elements;
+        long diagnostics;
+        long bytes;
+        // totals at the end of the last round
+        private Section committed;
+
+        private Section(String name) {
+            this.name = name;
+        }
+
+        private Section(Section section) {
+            this(section.name);
+            this.calls = section.calls;
+            this.time = section.time;
+            this.elements = section.elements;
+            this.diagnostics = section.diagnostics;
+            this.bytes = section.bytes;
+        }
+
+        private void mark() {
+            committed = new Section(this);
+        }
+
+        Section sinceLastRound() {
+            Section last = committed == null ? new Section(name) : committed;
+            Section delta = new Section(name);
+            delta.calls = calls - last.calls;
+            delta.time = time - last.time;
+            delta.elements = elements - last.elements;
+            delta.diagnostics = diagnostics - last.diagnostics;
+            delta.bytes = bytes - last.bytes;
+            return delta;
+        }
+    }
+}
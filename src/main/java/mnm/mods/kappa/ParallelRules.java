@@ -0,0 +1,119 @@
+package mnm.mods.kappa;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.util.Types;
+
+import mnm.mods.kappa.RulePlan.Finding;
+
+/**
+ * Checks the elements of a round on a fork join pool. Elements are captured as
+ * {@link ElementSnapshot}s on the compiler's thread, checked in parallel, and
+ * the findings are reported back on the compiler's thread in the order the
+ * elements were added.
+ *
+ * @author Matthew Messinger
+ */
+final class ParallelRules {
+
+    // Elements checked by each task once split
+    private static final int BATCH = 256;
+
+    private final ForkJoinPool pool;
+    private final Types typeUtils;
+
+    private ElementSnapshot.Factory snapshots;
+    private final List<Element> elements = new ArrayList<>();
+    private final List<RulePlan> plans = new ArrayList<>();
+    private final List<ElementSnapshot> captured = new ArrayList<>();
+
+    /**
+     * @param typeUtils The type utils to capture with
+     * @param parallelism The number of threads to check with
+     */
+    ParallelRules(Types typeUtils, int parallelism) {
+        this.typeUtils = typeUtils;
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Captures an element to be checked against a plan.
+     *
+     * @param plan The plan
+     * @param element The element
+     */
+    void add(RulePlan plan, Element element) {
+        if (snapshots == null) {
+            snapshots = new ElementSnapshot.Factory(typeUtils);
+        }
+        elements.add(element);
+        plans.add(plan);
+        captured.add(snapshots.capture(element, plan.needsSignature(), plan.needsType()));
+    }
+
+    /**
+     * Checks every element added this round and reports what was found.
+     *
+     * @param diagnostics The diagnostics to report to
+     * @return The number of elements checked
+     */
+    int run(Diagnostics diagnostics) {
+        int size = elements.size();
+        if (size > 0) {
+            @SuppressWarnings({ "unchecked", "rawtypes" })
+            List<Finding>[] findings = new List[size];
+            pool.invoke(new Check(findings, 0, size));
+            for (int i = 0; i < size; i++) {
+                for (Finding finding : findings[i]) {
+                    finding.report(diagnostics, elements.get(i));
+                }
+            }
+        }
+        elements.clear();
+        plans.clear();
+        captured.clear();
+        // types may change between rounds
+        snapshots = null;
+        return size;
+    }
+
+    /**
+     * Stops the pool's threads.
+     */
+    void shutdown() {
+        pool.shutdown();
+    }
+
+    private class Check extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Finding>[] findings;
+        private final int start;
+        private final int end;
+
+        private Check(List<Finding>[] findings, int start, int end) {
+            this.findings = findings;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > BATCH) {
+                int mid = (start + end) >>> 1;
+                invokeAll(new Check(findings, start, mid), new Check(findings, mid, end));
+                return;
+            }
+            for (int i = start; i < end; i++) {
+                List<Finding> found = new ArrayList<>(0);
+                plans.get(i).evaluate(captured.get(i), found);
+                findings[i] = found;
+            }
+        }
+    }
+}
@@ -1,11 +1,14 @@
 package mnm.mods.kappa;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 
 import javax.annotation.processing.AbstractProcessor;
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.annotation.processing.RoundEnvironment;
 import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
 import javax.annotation.processing.SupportedSourceVersion;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.Element;
@@ -17,32 +20,101 @@ import javax.lang.model.element.TypeElement;
  * @author Matthew Messinger
  */
 @SupportedSourceVersion(SourceVersion.RELEASE_7)
-@SupportedAnnotationTypes("mnm.mods.kappa.annotation.*")
+@SupportedAnnotationTypes("*")
+@SupportedOptions({ KappaOptions.STATS, KappaOptions.REPORT, KappaOptions.MAX_PER_RULE,
+        KappaOptions.MAX_PER_UNIT, KappaOptions.METRICS, KappaOptions.PARALLEL })
 public class PostProcessor extends AbstractProcessor {
 
-    @SuppressWarnings("unused")
+    // Null until an annotation with rules is found
     private ProcessingUtils processingUtils;
+    private Metrics metrics;
+    // Only used when rules are checked in parallel.
+    private ParallelRules parallel;
+    // Compiled once per annotation type for the whole compilation.
+    private Map<TypeElement, RulePlan> plans = new HashMap<>();
 
     @Override
     public synchronized void init(ProcessingEnvironment processingEnv) {
         super.init(processingEnv);
+    }
 
-        this.processingUtils = new ProcessingUtils(processingEnv);
+    /**
+     * Creates everything needed to check rules. Every annotation is supported,
+     * so this waits for one with rules to keep compilations without any cheap.
+     */
+    private void setUp() {
+        this.metrics = Metrics.create(processingEnv, getClass().getSimpleName());
+        this.processingUtils = new ProcessingUtils(processingEnv, metrics);
+        if (KappaOptions.isEnabled(processingEnv, KappaOptions.PARALLEL)) {
+            int threads = KappaOptions.getInt(processingEnv, KappaOptions.PARALLEL,
+                    Runtime.getRuntime().availableProcessors());
+            this.parallel = new ParallelRules(processingEnv.getTypeUtils(), Math.max(threads, 1));
+        }
     }
 
     @Override
     public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (processingUtils != null) {
+            processingUtils.newRound();
+        }
         for (TypeElement annotation : annotations) {
-            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
-                process(annotation, element);
+            RulePlan plan = getPlan(annotation);
+            if (plan.isEmpty()) {
+                continue;
+            }
+            Set<? extends Element> elements = roundEnv.getElementsAnnotatedWith(annotation);
+            if (parallel != null) {
+                metrics.begin("capture");
+                for (Element element : elements) {
+                    parallel.add(plan, element);
+                }
+                metrics.end(elements.size());
+                continue;
             }
+            metrics.begin("applyPlan");
+            for (Element element : elements) {
+                plan.apply(element, processingUtils);
+            }
+            metrics.end(elements.size());
+        }
+        if (parallel != null) {
+            metrics.begin("checkParallel");
+            metrics.end(parallel.run(processingUtils.getDiagnostics()));
+        }
+        if (metrics != null) {
+            metrics.endRound();
         }
-        return true;
+        // last, so the final round is counted and capped
+        if (roundEnv.processingOver() && processingUtils != null) {
+            processingUtils.getDiagnostics().finish(getClass().getSimpleName());
+            if (KappaOptions.isEnabled(processingEnv, KappaOptions.STATS)) {
+                processingUtils.printStatistics(getClass().getSimpleName());
+            }
+            metrics.finish();
+            if (parallel != null) {
+                parallel.shutdown();
+            }
+        }
+        // Every annotation is supported, so don't claim any.
+        return false;
     }
 
-    private void process(TypeElement annotation, Element element) {
-        // TODO process annotations
+    private RulePlan getPlan(TypeElement annotation) {
+        RulePlan plan = plans.get(annotation);
+        if (plan == null) {
+            if (RulePlan.hasRules(annotation)) {
+                if (processingUtils == null) {
+                    setUp();
+                }
+                metrics.begin("compilePlan");
+                plan = RulePlan.compile(annotation, processingUtils);
+                metrics.end();
+            } else {
+                plan = RulePlan.EMPTY;
+            }
+            plans.put(annotation, plan);
+        }
+        return plan;
     }
 
-
 }
\ No newline at end of file
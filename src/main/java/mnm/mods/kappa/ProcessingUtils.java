@@ -1,9 +1,13 @@
 package mnm.mods.kappa;
 
-import java.util.ArrayList;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Target;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.annotation.processing.Messager;
 import javax.annotation.processing.ProcessingEnvironment;
@@ -16,8 +20,10 @@ import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.VariableElement;
 import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
 import javax.lang.model.util.Elements;
 import javax.lang.model.util.Types;
+import javax.tools.Diagnostic.Kind;
 
 /**
  * Contains methods for validating annotation usage.
@@ -27,13 +33,30 @@ import javax.lang.model.util.Types;
 public final class ProcessingUtils {
 
     private Messager messager;
+    private Diagnostics diagnostics;
     private Types typeUtils;
     private Elements elementUtils;
+    private Metrics metrics;
+    private SymbolCache symbols;
+
+    // Members of each annotation type by name.
+    private Map<TypeElement, Map<String, ExecutableElement>> memberCache = new IdentityHashMap<>();
+    // Annotations of each element by type. Cleared every round.
+    private Map<Element, Map<Element, AnnotationMirror>> annotationCache = new IdentityHashMap<>();
+    private int cacheHits;
+    private int cacheMisses;
 
     public ProcessingUtils(ProcessingEnvironment processingEnv) {
+        this(processingEnv, Metrics.DISABLED);
+    }
+
+    public ProcessingUtils(ProcessingEnvironment processingEnv, Metrics metrics) {
         this.messager = processingEnv.getMessager();
+        this.metrics = metrics;
+        this.diagnostics = new Diagnostics(processingEnv, metrics);
         this.typeUtils = processingEnv.getTypeUtils();
         this.elementUtils = processingEnv.getElementUtils();
+        this.symbols = SymbolCache.get(processingEnv);
     }
 
     /**
@@ -44,11 +67,12 @@ public final class ProcessingUtils {
      * @param annotation The annotation
      */
     public void ensureOwnerAnnotation(Element element, TypeElement annotation) {
-        if (!hasAnnotation(element.getEnclosingElement(), annotation.asType())) {
-            String typeName = getElementTypeName(element);
-            String anno = annotation.getSimpleName().toString();
-            Messages.MISSING_ANNOTATION.printMessage(messager, typeName, "@" + anno, element);
+        metrics.begin("ensureOwnerAnnotation");
+        if (getAnnotation(element.getEnclosingElement(), annotation) == null) {
+            Messages.MISSING_ANNOTATION.printMessage(diagnostics, LazyText.typeName(element),
+                    LazyText.annotation(annotation), element);
         }
+        metrics.end();
     }
 
     /**
@@ -61,31 +85,20 @@ public final class ProcessingUtils {
      * @param req True to require, false to restrict
      */
     public void ensureModifier(Element element, Modifier modifier, boolean req) {
+        metrics.begin("ensureModifier");
         boolean has = element.getModifiers().contains(modifier);
         boolean error = req ? !has : has;
         if (error) {
-            Messages message = null;
-            switch (modifier) {
-            case ABSTRACT:
-                message = req ? Messages.NON_ABSTRACT : Messages.ABSTRACT;
-                break;
-            case FINAL:
-                message = req ? Messages.NON_FINAL : Messages.FINAL;
-                break;
-            case STATIC:
-                message = req ? Messages.NON_STATIC : Messages.STATIC;
-                break;
-            case PUBLIC:
-                message = req ? Messages.NON_PUBLIC : null;
-                break;
-            default:
-
-            }
+            Messages message = getModifierMessage(modifier, req);
+            LazyText typeName = LazyText.typeName(element);
             if (message != null) {
-                String typeName = getElementTypeName(element);
-                message.printMessage(messager, typeName, "", element);
+                message.printMessage(diagnostics, typeName, "", element);
+            } else {
+                message = req ? Messages.REQUIRED_MODIFIER : Messages.FORBIDDEN_MODIFIER;
+                message.printMessage(diagnostics, typeName, modifier, element);
             }
         }
+        metrics.end();
     }
 
     /**
@@ -111,22 +124,25 @@ public final class ProcessingUtils {
      */
     public void ensureConstructor(TypeElement type, AnnotationMirror annotation,
             TypeMirror... args) {
+        metrics.begin("ensureConstructor");
         for (Element element : type.getEnclosedElements()) {
             if (element.getKind().equals(ElementKind.CONSTRUCTOR)) {
                 if (signatureMatches(((ExecutableElement) element).getParameters(), args)) {
                     // ensure public
                     ensureModifier(element, Modifier.PUBLIC, true);
+                    metrics.end();
                     return;
                 }
             }
         }
-        String prefix = getElementTypeName(type);
-        String suffix = generateParameters(args);
+        LazyText prefix = LazyText.typeName(type);
+        LazyText suffix = LazyText.parameters(args);
         if (annotation == null) {
-            Messages.MISSING_CONSTRUCTOR.printMessage(messager, prefix, suffix, type);
+            Messages.MISSING_CONSTRUCTOR.printMessage(diagnostics, prefix, suffix, type);
         } else {
-            Messages.MISSING_CONSTRUCTOR.printMessage(messager, prefix, suffix, type, annotation);
+            Messages.MISSING_CONSTRUCTOR.printMessage(diagnostics, prefix, suffix, type, annotation);
         }
+        metrics.end();
     }
 
     /**
@@ -138,15 +154,18 @@ public final class ProcessingUtils {
      * @param params The parameters
      */
     public void ensureParameters(ExecutableElement method, TypeMirror... params) {
+        metrics.begin("ensureParameters");
         List<? extends VariableElement> list = method.getParameters();
         if (list.size() == params.length) {
             if (signatureMatches(list, params)) {
+                metrics.end();
                 return;
             }
         }
-        String prefix = getElementTypeName(method);
-        String suffix = generateParameters(params);
-        Messages.INVALID_PARAMETERS.printMessage(messager, prefix, suffix, method);
+        LazyText prefix = LazyText.typeName(method);
+        LazyText suffix = LazyText.parameters(params);
+        Messages.INVALID_PARAMETERS.printMessage(diagnostics, prefix, suffix, method);
+        metrics.end();
     }
 
     /**
@@ -157,11 +176,11 @@ public final class ProcessingUtils {
      * @param retVal The return value
      */
     public void ensureReturn(ExecutableElement method, TypeMirror retVal) {
-        if (!method.getReturnType().equals(retVal)) {
-            String prefix = getElementTypeName(method);
-            String suffix = retVal.toString();
-            Messages.INVALID_RETURN.printMessage(messager, prefix, suffix, method);
+        metrics.begin("ensureReturn");
+        if (!typeUtils.isSameType(method.getReturnType(), retVal)) {
+            Messages.INVALID_RETURN.printMessage(diagnostics, LazyText.typeName(method), retVal, method);
         }
+        metrics.end();
     }
 
     /**
@@ -171,11 +190,11 @@ public final class ProcessingUtils {
      * @param t2 The type
      */
     public void ensureInstanceof(TypeElement t1, TypeElement t2) {
+        metrics.begin("ensureInstanceof");
         if (!typeUtils.isSubtype(t1.asType(), t2.asType())) {
-            String prefix = getElementTypeName(t1);
-            String suffix = t2.getSimpleName().toString();
-            Messages.NOT_SUBTYPE.printMessage(messager, prefix, suffix, t1);
+            Messages.NOT_SUBTYPE.printMessage(diagnostics, LazyText.typeName(t1), t2.getSimpleName(), t1);
         }
+        metrics.end();
     }
 
     /**
@@ -187,11 +206,12 @@ public final class ProcessingUtils {
      * @see ProcessingUtils#ensureSame(Element, TypeElement)
      */
     public void ensureAssignable(VariableElement element, TypeElement type) {
+        metrics.begin("ensureAssignable");
         if (!typeUtils.isAssignable(type.asType(), element.asType())) {
-            String prefix = getElementTypeName(element);
-            String suffix = type.getSimpleName().toString();
-            Messages.NOT_ASSIGNABLE.printMessage(messager, prefix, suffix, element);
+            Messages.NOT_ASSIGNABLE.printMessage(diagnostics, LazyText.typeName(element), type.getSimpleName(),
+                    element);
         }
+        metrics.end();
     }
 
     /**
@@ -202,11 +222,34 @@ public final class ProcessingUtils {
      * @param type The type
      */
     public void ensureSame(Element element, TypeElement type) {
+        metrics.begin("ensureSame");
         if (!typeUtils.isSameType(element.asType(), type.asType())) {
-            String prefix = getElementTypeName(element);
-            String suffix = type.getSimpleName().toString();
-            Messages.NOT_SAME.printMessage(messager, prefix, suffix, element);
+            Messages.NOT_SAME.printMessage(diagnostics, LazyText.typeName(element), type.getSimpleName(), element);
+        }
+        metrics.end();
+    }
+
+    /**
+     * Ensures that an {@link Element} is one of the given targets. Annotation
+     * types are checked by their own {@link Target}, which must only contain
+     * the given targets. Prints a compile error if it doesn't.
+     *
+     * @param element The element to test
+     * @param targets The allowed targets
+     */
+    public void ensureTarget(Element element, Set<ElementType> targets) {
+        metrics.begin("ensureTarget");
+        boolean valid;
+        if (element.getKind() == ElementKind.ANNOTATION_TYPE) {
+            Target target = element.getAnnotation(Target.class);
+            valid = target != null && targets.containsAll(Arrays.asList(target.value()));
+        } else {
+            valid = targets.contains(getElementType(element));
         }
+        if (!valid) {
+            Messages.INVALID_TARGET.printMessage(diagnostics, LazyText.typeName(element), targets, element);
+        }
+        metrics.end();
     }
 
     /**
@@ -218,42 +261,41 @@ public final class ProcessingUtils {
      * @param value The value with the class name string
      */
     public void ensureClassExists(Element element, AnnotationMirror mirror, AnnotationValue value) {
+        metrics.begin("ensureClassExists");
         String name = value.getValue().toString();
-        TypeElement type = elementUtils.getTypeElement(name);
+        TypeElement type = symbols.getTypeElement(name);
         if (type == null) {
             String prefix = "Class " + name;
-            Messages.NOT_FOUND.printMessage(messager, prefix, "", element, mirror, value);
+            Messages.NOT_FOUND.printMessage(diagnostics, prefix, "", element, mirror, value);
         }
+        metrics.end();
     }
 
     /**
      * Ensures that there are a minimum and maximum number of elements in a
-     * class with an annotation.
+     * class with an annotation. The elements are counted from the round's
+     * index rather than by scanning the class.
      *
+     * @param index The annotation index for the round
      * @param element The element
      * @param annotation The annotation
      * @param low The minimum number of elements
      * @param high The maximum number of elements
      */
-    public void ensureNumberOfElements(Element element, TypeElement annotation, int low, int high) {
-        TypeElement type = (TypeElement) element.getEnclosingElement();
-        List<? extends Element> list = type.getEnclosedElements();
-        List<Element> has = new ArrayList<>();
-        for (Element e : list) {
-            if (hasAnnotation(element, annotation.asType())) {
-                has.add(e);
-            }
-        }
+    public void ensureNumberOfElements(AnnotationIndex index, Element element,
+            TypeElement annotation, int low, int high) {
+        metrics.begin("ensureNumberOfElements");
+        int count = index.count(element.getEnclosingElement(), annotation);
         Messages msg = null;
-        if (has.size() < low) {
+        if (count < low) {
             msg = Messages.NOT_ENOUGH;
-        } else if (has.size() > high) {
+        } else if (count > high) {
             msg = Messages.TOO_MANY;
         }
         if (msg != null) {
-            msg.printMessage(messager, getElementTypeName(element), annotation.toString(),
-                    element);
+            msg.printMessage(diagnostics, LazyText.typeName(element), annotation, element);
         }
+        metrics.end();
     }
 
     /**
@@ -261,7 +303,10 @@ public final class ProcessingUtils {
      *
      * @param annotation The annotation
      * @return The map
+     * @deprecated Use {@link #getMember(TypeElement, String, Class)} to read
+     *             values without building a map each time
      */
+    @Deprecated
     public Map<String, AnnotationValue> getAnnotationValues(AnnotationMirror annotation) {
         Map<? extends ExecutableElement, ? extends AnnotationValue> map = this.elementUtils
                 .getElementValuesWithDefaults(annotation);
@@ -274,6 +319,32 @@ public final class ProcessingUtils {
         return values;
     }
 
+    /**
+     * Gets a typed view of an annotation member. The annotation type's members
+     * are only looked up once.
+     *
+     * @param annotation The annotation type
+     * @param name The member name
+     * @param type The type of the member's value
+     * @return The member
+     * @throws IllegalArgumentException If the annotation has no such member
+     */
+    public <T> AnnotationMember<T> getMember(TypeElement annotation, String name, Class<T> type) {
+        Map<String, ExecutableElement> members = memberCache.get(annotation);
+        if (members == null) {
+            members = new HashMap<>();
+            for (ExecutableElement member : ElementFilter.methodsIn(annotation.getEnclosedElements())) {
+                members.put(member.getSimpleName().toString(), member);
+            }
+            memberCache.put(annotation, members);
+        }
+        ExecutableElement member = members.get(name);
+        if (member == null) {
+            throw new IllegalArgumentException(annotation + " has no member " + name);
+        }
+        return new AnnotationMember<>(member, type);
+    }
+
     /**
      * Gets the annotation mirror of an element.
      *
@@ -282,12 +353,109 @@ public final class ProcessingUtils {
      * @return The annotation
      */
     public AnnotationMirror getAnnotation(Element type, TypeMirror annotation) {
-        for (AnnotationMirror mirror : type.getAnnotationMirrors()) {
-            if (mirror.getAnnotationType().equals(annotation)) {
-                return mirror;
-            }
+        return getAnnotations(type).get(typeUtils.asElement(annotation));
+    }
+
+    /**
+     * Gets the annotation mirror of an element.
+     *
+     * @param type The type with the annotation
+     * @param annotation The annotation type
+     * @return The annotation
+     */
+    public AnnotationMirror getAnnotation(Element type, TypeElement annotation) {
+        return getAnnotations(type).get(annotation);
+    }
+
+    /**
+     * @return The metrics the checks are recorded in
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return The collector which all messages are printed through
+     */
+    public Diagnostics getDiagnostics() {
+        return diagnostics;
+    }
+
+    /**
+     * Clears the per-round caches. Call at the start of every round.
+     */
+    public void newRound() {
+        annotationCache.clear();
+    }
+
+    /**
+     * @return The number of annotation lookups answered from the cache
+     */
+    public int getCacheHits() {
+        return cacheHits;
+    }
+
+    /**
+     * @return The number of annotation lookups which had to read the element
+     */
+    public int getCacheMisses() {
+        return cacheMisses;
+    }
+
+    /**
+     * Prints the cache statistics as a note.
+     *
+     * @param processor The name of the processor they belong to
+     */
+    public void printStatistics(String processor) {
+        messager.printMessage(Kind.NOTE, processor + " annotation cache: " + cacheHits
+                + " hits, " + cacheMisses + " misses");
+        symbols.printStatistics(messager, processor);
+    }
+
+    private Map<Element, AnnotationMirror> getAnnotations(Element element) {
+        Map<Element, AnnotationMirror> annotations = annotationCache.get(element);
+        if (annotations != null) {
+            cacheHits++;
+            return annotations;
+        }
+        cacheMisses++;
+        List<? extends AnnotationMirror> mirrors = element.getAnnotationMirrors();
+        annotations = new HashMap<>(mirrors.size() * 2);
+        for (AnnotationMirror mirror : mirrors) {
+            annotations.put(mirror.getAnnotationType().asElement(), mirror);
         }
-        return null;
+        annotationCache.put(element, annotations);
+        return annotations;
+    }
+
+    /**
+     * Resolves a type from its name. Primitives, {@code void}, arrays and
+     * fully qualified class names are accepted. Class types are erased so they
+     * can be compared against parameterized uses.
+     *
+     * @param name The type name
+     * @return The type, or null if it doesn't exist
+     */
+    public TypeMirror getType(String name) {
+        return symbols.getType(name);
+    }
+
+    /**
+     * Gets a type element from its fully qualified name.
+     *
+     * @param name The type name
+     * @return The type element, or null if it doesn't exist
+     */
+    public TypeElement getTypeElement(String name) {
+        return symbols.getTypeElement(name);
+    }
+
+    /**
+     * @return The compilation's shared symbol cache
+     */
+    public SymbolCache getSymbols() {
+        return symbols;
     }
 
     private boolean signatureMatches(List<? extends VariableElement> params1, TypeMirror[] params2) {
@@ -302,7 +470,29 @@ public final class ProcessingUtils {
         return false;
     }
 
-    private String generateParameters(TypeMirror[] args) {
+    /**
+     * Gets the specific message for a modifier rule.
+     *
+     * @param modifier The modifier
+     * @param req True if it is required, false if forbidden
+     * @return The message, or null to use the generic one
+     */
+    static Messages getModifierMessage(Modifier modifier, boolean req) {
+        switch (modifier) {
+        case ABSTRACT:
+            return req ? Messages.NON_ABSTRACT : Messages.ABSTRACT;
+        case FINAL:
+            return req ? Messages.NON_FINAL : Messages.FINAL;
+        case STATIC:
+            return req ? Messages.NON_STATIC : Messages.STATIC;
+        case PUBLIC:
+            return req ? Messages.NON_PUBLIC : null;
+        default:
+            return null;
+        }
+    }
+
+    static String generateParameters(TypeMirror[] args) {
         StringBuilder sb = new StringBuilder();
         sb.append("(");
         for (TypeMirror type : args) {
@@ -315,11 +505,33 @@ public final class ProcessingUtils {
         return sb.toString();
     }
 
-    private boolean hasAnnotation(Element element, TypeMirror annotation) {
-        return getAnnotation(element, annotation) != null;
+    static ElementType getElementType(Element element) {
+        switch (element.getKind()) {
+        case ANNOTATION_TYPE:
+            return ElementType.ANNOTATION_TYPE;
+        case CLASS:
+        case ENUM:
+        case INTERFACE:
+            return ElementType.TYPE;
+        case ENUM_CONSTANT:
+        case FIELD:
+            return ElementType.FIELD;
+        case METHOD:
+            return ElementType.METHOD;
+        case CONSTRUCTOR:
+            return ElementType.CONSTRUCTOR;
+        case PARAMETER:
+            return ElementType.PARAMETER;
+        case LOCAL_VARIABLE:
+            return ElementType.LOCAL_VARIABLE;
+        case PACKAGE:
+            return ElementType.PACKAGE;
+        default:
+            return null;
+        }
     }
 
-    private String getElementTypeName(Element element) {
+    static String getElementTypeName(Element element) {
         ElementKind kind = element.getKind();
         String type = kind.toString().toLowerCase().replace('_', ' ');
         // capitalize first letter
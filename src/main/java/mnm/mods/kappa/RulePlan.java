@@ -0,0 +1,315 @@
+package mnm.mods.kappa;
+
+import java.lang.annotation.ElementType;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+
+import mnm.mods.kappa.ElementSnapshot.TypeSnapshot;
+import mnm.mods.kappa.annotation.EnsureModifier;
+import mnm.mods.kappa.annotation.EnsureParameters;
+import mnm.mods.kappa.annotation.EnsureReturn;
+import mnm.mods.kappa.annotation.EnsureTarget;
+import mnm.mods.kappa.annotation.EnsureType;
+
+/**
+ * The rules of an annotation type, compiled from its meta annotations. A plan
+ * is immutable and is compiled once per annotation type, then applied to every
+ * element with that annotation.
+ *
+ * @author Matthew Messinger
+ */
+final class RulePlan {
+
+    // The package of every rule annotation
+    private static final String RULES_PACKAGE = "mnm.mods.kappa.annotation";
+
+    /**
+     * A plan with no rules.
+     */
+    static final RulePlan EMPTY = new RulePlan(EnumSet.noneOf(Modifier.class),
+            EnumSet.noneOf(Modifier.class), null, null, null, null);
+
+    private final Set<Modifier> required;
+    private final Set<Modifier> forbidden;
+    private final Set<ElementType> targets;
+    private final TypeMirror[] parameters;
+    private final TypeMirror returnType;
+    private final TypeElement type;
+
+    // The same rules by name, for checking snapshots
+    private final String[] parameterNames;
+    private final String parametersSuffix;
+    private final String returnName;
+    private final String typeName;
+
+    private RulePlan(Set<Modifier> required, Set<Modifier> forbidden, Set<ElementType> targets,
+            TypeMirror[] parameters, TypeMirror returnType, TypeElement type) {
+        this.required = Collections.unmodifiableSet(required);
+        this.forbidden = Collections.unmodifiableSet(forbidden);
+        this.targets = targets == null ? null : Collections.unmodifiableSet(targets);
+        this.parameters = parameters;
+        this.returnType = returnType;
+        this.type = type;
+
+        if (parameters != null) {
+            this.parameterNames = new String[parameters.length];
+            for (int i = 0; i < parameters.length; i++) {
+                parameterNames[i] = parameters[i].toString();
+            }
+            this.parametersSuffix = ProcessingUtils.generateParameters(parameters);
+        } else {
+            this.parameterNames = null;
+            this.parametersSuffix = null;
+        }
+        this.returnName = returnType == null ? null : returnType.toString();
+        this.typeName = type == null ? null : type.getQualifiedName().toString();
+    }
+
+    /**
+     * Tests if an annotation type has any rules. Only the names of its meta
+     * annotations are compared, so nothing is read or resolved.
+     *
+     * @param annotation The annotation type
+     * @return True if it has a rule
+     */
+    static boolean hasRules(TypeElement annotation) {
+        for (AnnotationMirror mirror : annotation.getAnnotationMirrors()) {
+            Element type = mirror.getAnnotationType().asElement();
+            if (RULES_PACKAGE.equals(type.getEnclosingElement().toString())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the meta annotations of an annotation type and compiles them into
+     * a plan. Type names which can't be resolved print a warning on the
+     * annotation type and their rule is skipped.
+     *
+     * @param annotation The annotation type
+     * @param utils The processing utils used to resolve types
+     * @return The plan, or {@link #EMPTY} if it has no rules
+     */
+    static RulePlan compile(TypeElement annotation, ProcessingUtils utils) {
+        EnsureModifier modifiers = annotation.getAnnotation(EnsureModifier.class);
+        EnsureTarget target = annotation.getAnnotation(EnsureTarget.class);
+        EnsureParameters params = annotation.getAnnotation(EnsureParameters.class);
+        EnsureReturn ret = annotation.getAnnotation(EnsureReturn.class);
+        EnsureType ensureType = annotation.getAnnotation(EnsureType.class);
+        if (modifiers == null && target == null && params == null && ret == null
+                && ensureType == null) {
+            return EMPTY;
+        }
+
+        EnumSet<Modifier> required = EnumSet.noneOf(Modifier.class);
+        EnumSet<Modifier> forbidden = EnumSet.noneOf(Modifier.class);
+        if (modifiers != null) {
+            for (EnsureModifier.Rule rule : modifiers.value()) {
+                (rule.rule() ? required : forbidden).add(rule.modifier());
+            }
+        }
+
+        EnumSet<ElementType> targets = null;
+        if (target != null) {
+            targets = EnumSet.noneOf(ElementType.class);
+            targets.addAll(Arrays.asList(target.value()));
+        }
+
+        TypeMirror[] parameters = null;
+        if (params != null) {
+            String[] names = params.value();
+            parameters = new TypeMirror[names.length];
+            for (int i = 0; i < names.length; i++) {
+                parameters[i] = resolve(annotation, names[i], utils);
+                if (parameters[i] == null) {
+                    parameters = null;
+                    break;
+                }
+            }
+        }
+
+        TypeMirror returnType = null;
+        if (ret != null) {
+            returnType = resolve(annotation, ret.value(), utils);
+        }
+
+        TypeElement type = null;
+        if (ensureType != null) {
+            type = utils.getTypeElement(ensureType.value());
+            if (type == null) {
+                Messages.NOT_FOUND.printMessage(utils.getDiagnostics(),
+                        "Class " + ensureType.value(), "", annotation);
+            }
+        }
+
+        return new RulePlan(required, forbidden, targets, parameters, returnType, type);
+    }
+
+    private static TypeMirror resolve(TypeElement annotation, String name, ProcessingUtils utils) {
+        TypeMirror type = utils.getType(name);
+        if (type == null) {
+            Messages.NOT_FOUND.printMessage(utils.getDiagnostics(), "Class " + name, "", annotation);
+        }
+        return type;
+    }
+
+    /**
+     * @return True if this plan has no rules
+     */
+    boolean isEmpty() {
+        return this == EMPTY;
+    }
+
+    /**
+     * @return True if checking needs the parameters and return type of
+     *         executables
+     */
+    boolean needsSignature() {
+        return parameters != null || returnType != null;
+    }
+
+    /**
+     * @return True if checking needs the supertypes of type elements
+     */
+    boolean needsType() {
+        return type != null;
+    }
+
+    /**
+     * Applies this plan to an element in one pass, printing any errors.
+     *
+     * @param element The annotated element
+     * @param utils The processing utils
+     */
+    void apply(Element element, ProcessingUtils utils) {
+        Set<Modifier> has = element.getModifiers();
+        if (!has.containsAll(required)) {
+            for (Modifier modifier : required) {
+                utils.ensureModifier(element, modifier, true);
+            }
+        }
+        if (!Collections.disjoint(has, forbidden)) {
+            for (Modifier modifier : forbidden) {
+                utils.ensureModifier(element, modifier, false);
+            }
+        }
+        if (targets != null) {
+            utils.ensureTarget(element, targets);
+        }
+        if (element instanceof ExecutableElement) {
+            ExecutableElement method = (ExecutableElement) element;
+            if (parameters != null) {
+                utils.ensureParameters(method, parameters);
+            }
+            if (returnType != null && method.getKind() == ElementKind.METHOD) {
+                utils.ensureReturn(method, returnType);
+            }
+        }
+        if (type != null && element instanceof TypeElement) {
+            utils.ensureInstanceof((TypeElement) element, type);
+        }
+    }
+
+    /**
+     * Checks a snapshot against this plan without touching javac. The
+     * findings are the same, and in the same order, as {@link #apply} would
+     * print. Types are compared by their erased names.
+     *
+     * @param element The snapshot
+     * @param findings The list to add findings to
+     */
+    void evaluate(ElementSnapshot element, List<Finding> findings) {
+        Set<Modifier> has = element.modifiers;
+        for (Modifier modifier : required) {
+            if (!has.contains(modifier)) {
+                findings.add(modifierFinding(element, modifier, true));
+            }
+        }
+        for (Modifier modifier : forbidden) {
+            if (has.contains(modifier)) {
+                findings.add(modifierFinding(element, modifier, false));
+            }
+        }
+        if (targets != null) {
+            boolean valid;
+            if (element.kind == ElementKind.ANNOTATION_TYPE) {
+                valid = element.declaredTargets != null && targets.containsAll(element.declaredTargets);
+            } else {
+                valid = targets.contains(element.elementType);
+            }
+            if (!valid) {
+                findings.add(new Finding(Messages.INVALID_TARGET, targets));
+            }
+        }
+        if (element.parameters != null) {
+            if (parameterNames != null && !parametersMatch(element.parameters)) {
+                findings.add(new Finding(Messages.INVALID_PARAMETERS, parametersSuffix));
+            }
+            if (returnName != null && element.kind == ElementKind.METHOD
+                    && !returnName.equals(element.returnType.name)) {
+                findings.add(new Finding(Messages.INVALID_RETURN, returnName));
+            }
+        }
+        if (typeName != null && element.type != null && !element.type.isSubtypeOf(typeName)) {
+            findings.add(new Finding(Messages.NOT_SUBTYPE, type.getSimpleName()));
+        }
+    }
+
+    private boolean parametersMatch(List<TypeSnapshot> params) {
+        if (params.size() != parameterNames.length) {
+            return false;
+        }
+        for (int i = 0; i < parameterNames.length; i++) {
+            if (!params.get(i).isSubtypeOf(parameterNames[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Finding modifierFinding(ElementSnapshot element, Modifier modifier, boolean req) {
+        Messages message = ProcessingUtils.getModifierMessage(modifier, req);
+        if (message != null) {
+            return new Finding(message, "");
+        }
+        message = req ? Messages.REQUIRED_MODIFIER : Messages.FORBIDDEN_MODIFIER;
+        return new Finding(message, modifier);
+    }
+
+    /**
+     * A message found while checking a snapshot, to be reported later on the
+     * compiler's thread. The element's name is only formatted if it is
+     * printed.
+     */
+    static final class Finding {
+        private final Messages message;
+        private final Object suffix;
+
+        private Finding(Messages message, Object suffix) {
+            this.message = message;
+            this.suffix = suffix;
+        }
+
+        /**
+         * Reports this finding.
+         *
+         * @param diagnostics The diagnostics to report to
+         * @param element The element the snapshot was taken of
+         */
+        void report(Diagnostics diagnostics, Element element) {
+            message.printMessage(diagnostics, LazyText.typeName(element), suffix, element);
+        }
+    }
+}
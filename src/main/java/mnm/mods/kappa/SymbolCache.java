@@ -0,0 +1,164 @@
+package mnm.mods.kappa;
+
+import java.lang.ref.WeakReference;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.NoType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic.Kind;
+
+/**
+ * Interns the types Kappa resolves by name. There is one cache for each
+ * compilation, shared by every Kappa processor in it, so each name is only
+ * resolved once no matter how many processors or rounds ask for it. Names
+ * which don't resolve aren't remembered, as a later round may generate them.
+ * <p>
+ * Caches are found by the compilation's {@link Elements}, and are held by the
+ * processors using them. Only use a cache on the compiler's thread.
+ *
+ * @author Matthew Messinger
+ */
+public final class SymbolCache {
+
+    // Weak values so an entry never keeps its compilation alive.
+    private static final Map<Elements, WeakReference<SymbolCache>> caches = new WeakHashMap<>();
+
+    private final Elements elementUtils;
+    private final Types typeUtils;
+
+    private final Map<String, TypeElement> typeElements = new HashMap<>();
+    private final Map<String, TypeMirror> types = new HashMap<>();
+    private final Map<TypeKind, PrimitiveType> primitives = new EnumMap<>(TypeKind.class);
+    private final NoType voidType;
+    private int hits;
+    private int misses;
+
+    private SymbolCache(ProcessingEnvironment processingEnv) {
+        this.elementUtils = processingEnv.getElementUtils();
+        this.typeUtils = processingEnv.getTypeUtils();
+        this.voidType = typeUtils.getNoType(TypeKind.VOID);
+        for (TypeKind kind : TypeKind.values()) {
+            if (kind.isPrimitive()) {
+                primitives.put(kind, typeUtils.getPrimitiveType(kind));
+            }
+        }
+    }
+
+    /**
+     * Gets the cache of a compilation, creating it if this is the first
+     * processor to ask.
+     *
+     * @param processingEnv The processing environment
+     * @return The compilation's cache
+     */
+    public static SymbolCache get(ProcessingEnvironment processingEnv) {
+        Elements key = processingEnv.getElementUtils();
+        synchronized (caches) {
+            WeakReference<SymbolCache> ref = caches.get(key);
+            SymbolCache cache = ref == null ? null : ref.get();
+            if (cache == null) {
+                cache = new SymbolCache(processingEnv);
+                caches.put(key, new WeakReference<>(cache));
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * Gets a type element from its fully qualified name.
+     *
+     * @param name The type name
+     * @return The type element, or null if it doesn't exist
+     */
+    public TypeElement getTypeElement(String name) {
+        TypeElement type = typeElements.get(name);
+        if (type != null) {
+            hits++;
+            return type;
+        }
+        misses++;
+        type = elementUtils.getTypeElement(name);
+        if (type != null) {
+            typeElements.put(name, type);
+        }
+        return type;
+    }
+
+    /**
+     * Resolves a type from its name. Primitives, {@code void}, arrays and
+     * fully qualified class names are accepted. Class types are erased so they
+     * can be compared against parameterized uses.
+     *
+     * @param name The type name
+     * @return The type, or null if it doesn't exist
+     */
+    public TypeMirror getType(String name) {
+        TypeMirror type = types.get(name);
+        if (type != null) {
+            hits++;
+            return type;
+        }
+        type = resolveType(name);
+        if (type != null) {
+            types.put(name, type);
+        }
+        return type;
+    }
+
+    /**
+     * @param kind The primitive kind
+     * @return The primitive type
+     */
+    public PrimitiveType getPrimitiveType(TypeKind kind) {
+        PrimitiveType type = primitives.get(kind);
+        if (type == null) {
+            throw new IllegalArgumentException(kind + " is not primitive");
+        }
+        return type;
+    }
+
+    /**
+     * @return The {@code void} type
+     */
+    public NoType getVoidType() {
+        return voidType;
+    }
+
+    /**
+     * Prints the cache statistics as a note.
+     *
+     * @param messager The messager to print with
+     * @param processor The name of the processor asking
+     */
+    public void printStatistics(Messager messager, String processor) {
+        messager.printMessage(Kind.NOTE, processor + " symbol cache: " + hits + " hits, "
+                + misses + " misses");
+    }
+
+    private TypeMirror resolveType(String name) {
+        if (name.endsWith("[]")) {
+            TypeMirror component = getType(name.substring(0, name.length() - 2));
+            return component == null ? null : typeUtils.getArrayType(component);
+        }
+        for (Map.Entry<TypeKind, PrimitiveType> primitive : primitives.entrySet()) {
+            if (primitive.getKey().name().toLowerCase().equals(name)) {
+                return primitive.getValue();
+            }
+        }
+        if (name.equals("void")) {
+            return voidType;
+        }
+        TypeElement type = getTypeElement(name);
+        return type == null ? null : typeUtils.erasure(type.asType());
+    }
+}
@@ -24,9 +24,12 @@ import java.lang.annotation.Target;
  * <li>{@code assets/modid/models/block/custom_block.json}</li>
  * <li>{@code assets/modid/models/item/custom_block.json}</li>
  * </ul>
+ * <p>
+ * This is kept in the class file so incremental builds can find blocks whose
+ * sources weren't recompiled.
  */
 @Target({ ElementType.FIELD, ElementType.LOCAL_VARIABLE })
-@Retention(RetentionPolicy.SOURCE)
+@Retention(RetentionPolicy.CLASS)
 public @interface BlockDef {
 
     /**
@@ -48,4 +51,24 @@ public @interface BlockDef {
     String blockname();
 
     BlockVariant[] variants() default {};
+
+    /**
+     * The properties of the block's state. The blockstate gets a variant for
+     * every combination of their values, after the ones in
+     * {@link #variants()}.
+     * <p>
+     * Defaults to an empty array.
+     */
+    BlockProperty[] properties() default {};
+
+    /**
+     * The English name of the block. When set, it is written as
+     * {@code tile.<blockname>.name} to
+     * {@code assets/modid/lang/en_US.kappa.lang}, along with the other blocks
+     * in the namespace. The build has to merge it into {@code en_US.lang}.
+     * Names already in a lang file in the resource roots are left out.
+     * <p>
+     * Defaults to an empty string, which writes nothing.
+     */
+    String displayName() default "";
 }
@@ -1,10 +1,20 @@
 package mnm.mods.kappa.blocks;
 
+import java.io.Closeable;
+import java.io.FilterWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -14,6 +24,7 @@ import javax.annotation.processing.Messager;
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.annotation.processing.RoundEnvironment;
 import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
 import javax.annotation.processing.SupportedSourceVersion;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.Element;
@@ -22,25 +33,41 @@ import javax.tools.Diagnostic.Kind;
 import javax.tools.FileObject;
 import javax.tools.StandardLocation;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import mnm.mods.kappa.JsonEmitter;
+import mnm.mods.kappa.KappaOptions;
+import mnm.mods.kappa.Messages;
+import mnm.mods.kappa.Metrics;
 
 @SupportedSourceVersion(SourceVersion.RELEASE_6)
 @SupportedAnnotationTypes("mnm.mods.kappa.blocks.BlockDef")
+@SupportedOptions({ KappaOptions.SKIP_UNCHANGED, KappaOptions.METRICS,
+        KappaOptions.ASYNC_WRITES, KappaOptions.DEDUP_MODELS, KappaOptions.RESOURCE_ROOTS,
+        KappaOptions.BLOCK_TABLES })
 public class BlockModelGen extends AbstractProcessor {
 
-    private Gson gson = new GsonBuilder().setPrettyPrinting().create();
-    // Keep track of the files we create so we don't create any twice.
-    private Map<Type, Set<String>> createdFiles = new EnumMap<>(Type.class);
+    // Keep track of the files we create so we don't create any twice. This
+    // only lasts one compilation. Incremental builds pass every @BlockDef
+    // back in, including the ones read from class files, so it is complete.
+    // Null until the first @BlockDef is processed.
+    private Map<Type, Set<String>> createdFiles;
 
     private Messager messager;
     private Filer filer;
-
-    public BlockModelGen() {
-        createdFiles.put(Type.BLOCK_MODEL, new HashSet<String>());
-        createdFiles.put(Type.BLOCK_STATE, new HashSet<String>());
-        createdFiles.put(Type.ITEM_MODEL, new HashSet<String>());
-    }
+    // Only used when unchanged writes are skipped.
+    private OutputCache outputCache;
+    // Only used when resources are written in the background.
+    private ResourceWriter resourceWriter;
+    // The canonical block model of each type and textures. Only used when
+    // models are deduplicated.
+    private Map<String, String> models;
+    private int deduplicated;
+    // Only used when textures are checked.
+    private TextureIndex textureIndex;
+    // Only used when block tables are generated.
+    private BlockTableWriter tableWriter;
+    // Display names from every round, written when processing is over.
+    private LangFileWriter langWriter;
+    private Metrics metrics;
 
     @Override
     public synchronized void init(ProcessingEnvironment processingEnv) {
@@ -50,101 +77,270 @@ public class BlockModelGen extends AbstractProcessor {
         this.filer = processingEnv.getFiler();
     }
 
+    /**
+     * Creates everything needed to generate resources. javac only calls this
+     * processor once a {@code @BlockDef} is found, so compilations without any
+     * never load it.
+     */
+    private void setUp() {
+        this.createdFiles = new EnumMap<>(Type.class);
+        createdFiles.put(Type.BLOCK_MODEL, new HashSet<String>());
+        createdFiles.put(Type.BLOCK_STATE, new HashSet<String>());
+        createdFiles.put(Type.ITEM_MODEL, new HashSet<String>());
+        this.metrics = Metrics.create(processingEnv, getClass().getSimpleName());
+        if (KappaOptions.isEnabled(processingEnv, KappaOptions.SKIP_UNCHANGED)) {
+            this.outputCache = new OutputCache(filer);
+        }
+        if (KappaOptions.isEnabled(processingEnv, KappaOptions.ASYNC_WRITES)) {
+            int capacity = KappaOptions.getInt(processingEnv, KappaOptions.ASYNC_WRITES, 64);
+            this.resourceWriter = new ResourceWriter(messager, capacity);
+        }
+        String roots = processingEnv.getOptions().get(KappaOptions.RESOURCE_ROOTS);
+        if (roots != null) {
+            this.textureIndex = new TextureIndex(messager, roots);
+        }
+        if (KappaOptions.isEnabled(processingEnv, KappaOptions.DEDUP_MODELS)) {
+            this.models = new HashMap<>();
+        }
+        this.langWriter = new LangFileWriter(filer, messager, roots);
+        if (KappaOptions.isEnabled(processingEnv, KappaOptions.BLOCK_TABLES)) {
+            this.tableWriter = new BlockTableWriter(filer, messager, processingEnv.getElementUtils(),
+                    processingEnv.getTypeUtils());
+        }
+    }
+
     @Override
     public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (createdFiles == null) {
+            setUp();
+        }
+        // Collect every output first so each file gets all of its originating
+        // elements. Incremental builds depend on them being accurate.
+        Map<String, Output> outputs = new LinkedHashMap<>();
         for (TypeElement annotation : annotations) {
-            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
-                process(annotation, element);
+            Set<? extends Element> elements = roundEnv.getElementsAnnotatedWith(annotation);
+            metrics.begin("collect");
+            for (Element element : elements) {
+                collect(element, outputs);
             }
+            metrics.end(elements.size());
+        }
+        for (Output output : outputs.values()) {
+            metrics.begin(output.type.name());
+            write(output);
+            metrics.end();
+        }
+        if (tableWriter != null) {
+            metrics.begin("tables");
+            tableWriter.write();
+            metrics.end();
+        }
+        if (roundEnv.processingOver()) {
+            // one write per namespace, with the names from every round
+            metrics.begin("lang");
+            langWriter.write();
+            metrics.end();
+        }
+        metrics.endRound();
+        if (resourceWriter != null) {
+            if (roundEnv.processingOver()) {
+                resourceWriter.finish();
+            } else {
+                resourceWriter.reportFailures();
+            }
+        }
+        if (roundEnv.processingOver()) {
+            if (outputCache != null) {
+                messager.printMessage(Kind.NOTE, "Skipped " + outputCache.getSkipped()
+                        + " unchanged resource writes");
+            }
+            if (models != null) {
+                messager.printMessage(Kind.NOTE, "Deduplicated " + deduplicated
+                        + " block models into " + models.size());
+            }
+            metrics.finish();
         }
         return true;
     }
 
-    private void process(TypeElement annotation, Element element) {
+    private void collect(Element element, Map<String, Output> outputs) {
         BlockDef block = element.getAnnotation(BlockDef.class);
         String namespace = block.namespace();
         String blockname = block.blockname();
-        for (Type s : Type.values()) {
-            try {
-                FileObject file;
-                switch (s) {
-                case BLOCK_STATE:
-                    if (createdFiles.get(s).contains(namespace + ":" + blockname)) {
-                        break;
-                    }
-                    file = filer.createResource(StandardLocation.CLASS_OUTPUT,
-                            s.getPackage(namespace), blockname + ".json", element);
-                    fillBlockState(block, file);
-                    createdFiles.get(s).add(namespace + ":" + blockname);
-                    break;
-                case BLOCK_MODEL:
-                    for (int i = 0; i < block.variants().length; i++) {
-                        BlockVariant var = block.variants()[i];
-                        if (!var.createModel()) {
-                            continue;
-                        }
-                        String model = var.modelName();
-                        if (model.isEmpty()) {
-                            model = blockname + "_" + i;
-                        }
-                        if (createdFiles.get(s).contains(namespace + ":block/" + model)) {
-                            continue;
-                        }
-                        try {
-                            file = filer.createResource(StandardLocation.CLASS_OUTPUT, s.getPackage(namespace),
-                                    model + ".json", element);
-                            fillBlockModel(block, var, file);
-                            createdFiles.get(s).add(namespace + ":block/" + model);
-                        } catch (IllegalArgumentException e) {
-                            messager.printMessage(Kind.MANDATORY_WARNING, e.getMessage(), element);
-                        }
+        BlockVariant[] variants = block.variants();
+        Output state = new Output(Type.BLOCK_STATE, namespace, blockname, block, null);
+        state.models = new String[variants.length];
+        try {
+            state.properties = getProperties(block);
+        } catch (IllegalArgumentException e) {
+            messager.printMessage(Kind.MANDATORY_WARNING, e.getMessage(), element);
+            state.properties = new BlockProperty[0];
+        }
+        addOutput(outputs, state, element);
+        if (!block.displayName().isEmpty()) {
+            langWriter.add(element, namespace, blockname, block.displayName());
+        }
+        // missing textures already reported for this block
+        Set<String> missing = new HashSet<>();
+        String[] itemModels = new String[variants.length];
+        for (int i = 0; i < variants.length; i++) {
+            BlockVariant var = variants[i];
+            String model = var.modelName();
+            if (model.isEmpty()) {
+                model = blockname + "_" + i;
+            }
+            String blockModel = model;
+            if (var.createModel()) {
+                try {
+                    String[] textures = getTextures(block, var);
+                    if (textureIndex != null) {
+                        checkTextures(namespace, textures, element, missing);
                     }
-                    break;
-                case ITEM_MODEL:
-                    for (int i = 0; i < block.variants().length; i++) {
-                        BlockVariant var = block.variants()[i];
-                        if (!var.createItem()) {
-                            continue;
-                        }
-                        String model = var.modelName();
-                        if (model.isEmpty()) {
-                            model = blockname + "_" + i;
-                        }
-                        if (createdFiles.get(s).contains(namespace + ":" + model)) {
-                            continue;
-                        }
-                        file = filer.createResource(StandardLocation.CLASS_OUTPUT, s.getPackage(namespace),
-                                model + ".json", element);
-                        fillItemModel(model, block.namespace(), file);
-                        createdFiles.get(s).add(namespace + ":" + model);
+                    if (models != null) {
+                        blockModel = getCanonicalModel(namespace, var.modelType(), textures, model);
                     }
-                    break;
+                    addOutput(outputs, new Output(Type.BLOCK_MODEL, namespace, blockModel, block, var), element);
+                } catch (IllegalArgumentException e) {
+                    messager.printMessage(Kind.MANDATORY_WARNING, e.getMessage(), element);
                 }
-            } catch (IOException e) {
-                e.printStackTrace();
             }
+            state.models[i] = blockModel;
+            if (var.createItem()) {
+                Output item = new Output(Type.ITEM_MODEL, namespace, model, block, var);
+                item.parent = blockModel;
+                addOutput(outputs, item, element);
+                itemModels[i] = namespace + ":" + model;
+            }
+        }
+        if (tableWriter != null) {
+            tableWriter.add(element, namespace, blockname, itemModels);
+        }
+    }
+
+    private void checkTextures(String namespace, String[] textures, Element element, Set<String> missing) {
+        for (String texture : textures) {
+            String name = namespace + ":blocks/" + texture;
+            if (!textureIndex.contains(name) && missing.add(name)) {
+                messager.printMessage(Messages.NOT_FOUND.getKind(),
+                        Messages.NOT_FOUND.format("Texture " + name, ""), element);
+            }
+        }
+    }
+
+    /**
+     * Gets the first model generated with the same type and textures. The
+     * model is canonical if it is the first.
+     */
+    private String getCanonicalModel(String namespace, ModelType type, String[] textures, String model) {
+        StringBuilder key = new StringBuilder(namespace).append('|').append(type);
+        for (String texture : textures) {
+            key.append('|').append(texture);
         }
+        String canonical = models.get(key.toString());
+        if (canonical == null) {
+            models.put(key.toString(), model);
+            return model;
+        }
+        if (!canonical.equals(model)) {
+            deduplicated++;
+        }
+        return canonical;
+    }
+
+    private void addOutput(Map<String, Output> outputs, Output output, Element element) {
+        String key = output.type + ":" + output.namespace + ":" + output.name;
+        Output existing = outputs.get(key);
+        if (existing == null) {
+            outputs.put(key, output);
+            existing = output;
+        }
+        existing.origins.add(element);
     }
 
-    private void fillBlockState(BlockDef blockDef, FileObject file) throws IOException {
-        Writer writer = null;
+    private void write(Output output) {
+        Set<String> created = createdFiles.get(output.type);
+        String key = output.namespace + ":" + output.name;
+        // Files from earlier rounds can't be created again.
+        if (created.contains(key)) {
+            return;
+        }
+        String pkg = output.type.getPackage(output.namespace);
+        String name = output.name + ".json";
         try {
-            writer = file.openWriter();
-            writer.write(gson.toJson(new Blockstate(blockDef)).replace("\\u003d", "="));
-            writer.flush();
-        } finally {
-            if (writer != null) {
+            if (outputCache == null && resourceWriter == null) {
+                FileObject file = createResource(pkg, name, output);
+                Writer writer = null;
                 try {
-                    writer.close();
-                } catch (IOException e) {
-                    // silence
+                    writer = file.openWriter();
+                    if (metrics.isEnabled()) {
+                        writer = new CountingWriter(writer);
+                    }
+                    fill(output, writer);
+                    writer.flush();
+                    if (writer instanceof CountingWriter) {
+                        metrics.written(((CountingWriter) writer).count);
+                    }
+                } finally {
+                    closeQuietly(writer);
                 }
+            } else {
+                StringWriter buffer = new StringWriter();
+                fill(output, buffer);
+                byte[] content = buffer.toString().getBytes(StandardCharsets.UTF_8);
+                if (outputCache == null || !outputCache.isUnchanged(pkg, name, content)) {
+                    FileObject file = createResource(pkg, name, output);
+                    metrics.written(content.length);
+                    if (resourceWriter != null) {
+                        resourceWriter.submit(file, content, output.origins.get(0));
+                    } else {
+                        OutputStream out = null;
+                        try {
+                            out = file.openOutputStream();
+                            out.write(content);
+                            out.flush();
+                        } finally {
+                            closeQuietly(out);
+                        }
+                    }
+                }
+            }
+            created.add(key);
+        } catch (IOException e) {
+            messager.printMessage(Kind.ERROR, "Unable to write " + pkg.replace('.', '/') + "/" + name
+                    + ": " + e, output.origins.get(0));
+        }
+    }
+
+    private FileObject createResource(String pkg, String name, Output output) throws IOException {
+        Element[] origins = output.origins.toArray(new Element[output.origins.size()]);
+        return filer.createResource(StandardLocation.CLASS_OUTPUT, pkg, name, origins);
+    }
+
+    private void fill(Output output, Writer writer) throws IOException {
+        switch (output.type) {
+        case BLOCK_STATE:
+            fillBlockState(output.block, output.models, output.properties, writer);
+            break;
+        case BLOCK_MODEL:
+            fillBlockModel(output.block, output.variant, writer);
+            break;
+        case ITEM_MODEL:
+            fillItemModel(output.parent, output.namespace, writer);
+            break;
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // silence
             }
         }
     }
 
-    private void fillBlockModel(BlockDef block, BlockVariant var, FileObject file) throws IOException {
-        Writer writer = null;
+    private String[] getTextures(BlockDef block, BlockVariant var) {
         String[] params = var.modelType().arguments;
         String[] args = var.textures();
         if (args.length == 0) {
@@ -154,121 +350,204 @@ public class BlockModelGen extends AbstractProcessor {
             throw new IllegalArgumentException(var.modelType() + " requires " + params.length + " arguments."
                     + " Given " + args.length);
         }
-        try {
-            writer = file.openWriter();
-            writer.write(gson.toJson(new Model(var.modelType().toString(), block.namespace(), params, args)));
-            writer.flush();
-        } finally {
-            if (writer != null) {
-                try {
-                    writer.close();
-                } catch (IOException e) {
-                    // silence
-                }
+        return args;
+    }
+
+    /**
+     * Gets a block's properties sorted by name, so variant keys are canonical.
+     */
+    private BlockProperty[] getProperties(BlockDef block) {
+        BlockProperty[] properties = block.properties().clone();
+        Arrays.sort(properties, new Comparator<BlockProperty>() {
+            @Override
+            public int compare(BlockProperty o1, BlockProperty o2) {
+                return o1.name().compareTo(o2.name());
+            }
+        });
+        for (int i = 0; i < properties.length; i++) {
+            if (properties[i].values().length == 0) {
+                throw new IllegalArgumentException("Property " + properties[i].name() + " has no values");
+            }
+            if (i > 0 && properties[i].name().equals(properties[i - 1].name())) {
+                throw new IllegalArgumentException("Property " + properties[i].name() + " is declared twice");
             }
         }
+        return properties;
     }
 
-    private void fillItemModel(String name, String namespace, FileObject file) throws IOException {
-        Writer writer = null;
-        try {
-            writer = file.openWriter();
-            writer.write(gson.toJson(new Model(namespace, name)));
-            writer.flush();
-        } finally {
-            if (writer != null) {
-                try {
-                    writer.close();
-                } catch (IOException e) {
-                    // silence
-                }
+    private void fillBlockState(BlockDef block, String[] models, BlockProperty[] properties, Writer writer)
+            throws IOException {
+        JsonEmitter json = new JsonEmitter(writer);
+        json.beginObject().name("variants").beginObject();
+        BlockVariant[] variants = block.variants();
+        if (variants.length == 0 && properties.length == 0) {
+            json.name("normal").beginObject();
+            json.name("model").value(block.namespace() + ":" + block.blockname());
+            json.endObject();
+        }
+        for (int i = 0; i < variants.length; i++) {
+            BlockVariant var = variants[i];
+            json.name(var.variant()).beginObject();
+            json.name("model").value(block.namespace() + ":" + models[i]);
+            if (var.pitch() != 0) {
+                json.name("x").value(var.pitch());
+            }
+            if (var.yaw() != 0) {
+                json.name("y").value(var.yaw());
             }
+            json.endObject();
         }
+        if (properties.length > 0) {
+            fillProperties(block, properties, json);
+        }
+        json.endObject().endObject();
     }
 
-    private enum Type {
-
-        BLOCK_MODEL("assets.%s.models.block"),
-        BLOCK_STATE("assets.%s.blockstates"),
-        ITEM_MODEL("assets.%s.models.item");
+    /**
+     * Writes a variant for every combination of property values. The
+     * combinations are counted through like an odometer, so only the current
+     * one is held.
+     */
+    private void fillProperties(BlockDef block, BlockProperty[] properties, JsonEmitter json)
+            throws IOException {
+        BlockProperty.Value[][] values = new BlockProperty.Value[properties.length][];
+        for (int i = 0; i < properties.length; i++) {
+            values[i] = properties[i].values();
+        }
+        int[] index = new int[properties.length];
+        StringBuilder key = new StringBuilder();
+        while (true) {
+            key.setLength(0);
+            String model = block.blockname();
+            int pitch = 0;
+            int yaw = 0;
+            for (int i = 0; i < properties.length; i++) {
+                BlockProperty.Value value = values[i][index[i]];
+                if (i > 0) {
+                    key.append(',');
+                }
+                key.append(properties[i].name()).append('=').append(value.value());
+                if (!value.modelName().isEmpty()) {
+                    model = value.modelName();
+                }
+                pitch += value.pitch();
+                yaw += value.yaw();
+            }
+            json.name(key.toString()).beginObject();
+            json.name("model").value(block.namespace() + ":" + model);
+            if (pitch % 360 != 0) {
+                json.name("x").value(pitch % 360);
+            }
+            if (yaw % 360 != 0) {
+                json.name("y").value(yaw % 360);
+            }
+            json.endObject();
 
-        private String pkg;
+            // advance the last property first, carrying into the ones before
+            int i = properties.length - 1;
+            while (i >= 0 && ++index[i] == values[i].length) {
+                index[i--] = 0;
+            }
+            if (i < 0) {
+                break;
+            }
+        }
+    }
 
-        private Type(String pkg) {
-            this.pkg = pkg;
+    private void fillBlockModel(BlockDef block, BlockVariant var, Writer writer) throws IOException {
+        String[] params = var.modelType().arguments;
+        String[] args = getTextures(block, var);
+        JsonEmitter json = new JsonEmitter(writer);
+        json.beginObject();
+        json.name("parent").value("block/" + var.modelType());
+        json.name("textures").beginObject();
+        for (int i = 0; i < params.length; i++) {
+            json.name(params[i]).value(block.namespace() + ":blocks/" + args[i]);
         }
+        json.endObject().endObject();
+    }
 
-        public String getPackage(String s) {
-            return String.format(pkg, s);
+    private void fillItemModel(String parent, String namespace, Writer writer) throws IOException {
+        JsonEmitter json = new JsonEmitter(writer);
+        json.beginObject();
+        json.name("parent").value(namespace + ":block/" + parent);
+        json.name("display").beginObject();
+        json.name("thirdperson").beginObject();
+        json.name("rotation").values(10, -45, 170);
+        json.name("translation").values(0, 1.5, -2.75);
+        json.name("scale").values(0.375, 0.375, 0.375);
+        json.endObject().endObject().endObject();
+    }
+
+    /**
+     * A file to be written along with every element it came from.
+     */
+    private static class Output {
+        private final Type type;
+        private final String namespace;
+        private final String name;
+        private final BlockDef block;
+        private final BlockVariant variant;
+        private final List<Element> origins = new ArrayList<>();
+        // The model of each variant, for block states
+        private String[] models;
+        // The block model, for item models
+        private String parent;
+        // The properties sorted by name, for block states
+        private BlockProperty[] properties;
+
+        private Output(Type type, String namespace, String name, BlockDef block, BlockVariant variant) {
+            this.type = type;
+            this.namespace = namespace;
+            this.name = name;
+            this.block = block;
+            this.variant = variant;
         }
     }
 
-    // Json classes
+    /**
+     * Counts the characters written through it for the metrics.
+     */
+    private static class CountingWriter extends FilterWriter {
+        private long count;
 
-    @SuppressWarnings("unused")
-    private class Blockstate {
-        Map<String, Map<String, Object>> variants = new HashMap<>();
+        private CountingWriter(Writer out) {
+            super(out);
+        }
 
-        private Blockstate(BlockDef block) {
-            BlockVariant[] states = block.variants();
-            if (states.length == 0) {
-                Map<String, Object> map = new HashMap<>();
-                map.put("model", block.namespace() + ":" + block.blockname());
-                variants.put("normal", map);
-                return;
-            }
-            for (int i = 0; i < block.variants().length; i++) {
-                BlockVariant var = block.variants()[i];
-                String variant = var.variant();
-                String model = var.modelName();
-                if (model.isEmpty()) {
-                    model = block.blockname() + "_" + i;
-                }
-                Map<String, Object> map = new HashMap<>();
-                map.put("model", block.namespace() + ":" + model);
-                if (var.pitch() != 0) {
-                    map.put("x", var.pitch());
-                }
-                if (var.yaw() != 0) {
-                    map.put("y", var.yaw());
-                }
-                variants.put(variant, map);
-            }
+        @Override
+        public void write(int c) throws IOException {
+            super.write(c);
+            count++;
         }
 
-        private class Model {
-            String model;
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            super.write(cbuf, off, len);
+            count += len;
+        }
 
-            private Model(String model) {
-                this.model = model;
-            }
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            super.write(str, off, len);
+            count += len;
         }
     }
 
-    @SuppressWarnings("unused")
-    private class Model {
-        String parent;
-        Map<String, String> textures;
-        Map<String, Display> display;
+    private enum Type {
 
-        private Model(String namespace, String parent) {
-            this.parent = namespace + ":block/" + parent;
-            this.display = new HashMap<>();
-            this.display.put("thirdperson", new Display());
-        }
+        BLOCK_MODEL("assets.%s.models.block"),
+        BLOCK_STATE("assets.%s.blockstates"),
+        ITEM_MODEL("assets.%s.models.item");
 
-        private Model(String parent, String namespace, String[] params, String[] args) {
-            this.parent = "block/" + parent;
-            this.textures = new HashMap<String, String>();
-            for (int i = 0; i < params.length; i++) {
-                textures.put(params[i], namespace + ":blocks/" + args[i]);
-            }
+        private String pkg;
+
+        private Type(String pkg) {
+            this.pkg = pkg;
         }
 
-        private class Display {
-            double[] rotation = { 10, -45, 170 };
-            double[] translation = { 0, 1.5, -2.75 };
-            double[] scale = { 0.375, 0.375, 0.375 };
+        public String getPackage(String s) {
+            return String.format(pkg, s);
         }
     }
 
@@ -0,0 +1,59 @@
+package mnm.mods.kappa.blocks;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * A property of a block's state, such as {@code facing} or {@code half}. The
+ * blockstate gets a variant for every combination of the block's property
+ * values, with keys like {@code facing=north,half=top}. Properties only change
+ * the blockstate. Models still come from {@link BlockDef#variants()}.
+ */
+@Target({})
+@Retention(RetentionPolicy.CLASS)
+public @interface BlockProperty {
+
+    /**
+     * The property name.
+     */
+    String name();
+
+    /**
+     * The values this property can have.
+     */
+    Value[] values();
+
+    /**
+     * A value of a property. The rotations of every value in a combination
+     * are added together.
+     */
+    @Target({})
+    @Retention(RetentionPolicy.CLASS)
+    @interface Value {
+
+        /**
+         * The value name.
+         */
+        String value();
+
+        /**
+         * The pitch rotation. Defaults to {@code 0}.
+         */
+        int pitch() default 0;
+
+        /**
+         * The yaw rotation. Defaults to {@code 0}.
+         */
+        int yaw() default 0;
+
+        /**
+         * The model to use for combinations with this value. If more than one
+         * value in a combination has a model, the one whose property name
+         * sorts last wins. If none do, the block name is used.
+         * <p>
+         * Defaults to {@code ""}.
+         */
+        String modelName() default "";
+    }
+}
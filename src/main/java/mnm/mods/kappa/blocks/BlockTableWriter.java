@@ -0,0 +1,379 @@
+package mnm.mods.kappa.blocks;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates a class for each namespace with tables of its blocks' item models
+ * and a method which registers them all through a callback, e.g.
+ * {@code ModidBlockTable}. The tables are private so the callback stays the
+ * one source of them, and are only read through accessors. The class goes in the package shared by every
+ * class with blocks in the namespace.
+ * <p>
+ * The callback is given each block object along with its name. Blocks on
+ * static fields the table can see are read from the field when registering,
+ * as they are usually only assigned during startup. Other blocks are passed as
+ * null. The objects are typed as the closest class every field shares.
+ * <p>
+ * Sources can only be generated during a round, so each namespace is written
+ * at the end of the first round it appears in. Blocks added to it in later
+ * rounds, usually by other generated sources, are left out with a warning.
+ */
+class BlockTableWriter {
+
+    private static final String SUFFIX = "BlockTable";
+
+    private final Filer filer;
+    private final Messager messager;
+    private final Elements elements;
+    private final Types types;
+
+    // The blocks of each namespace this round
+    private final Map<String, List<Block>> namespaces = new LinkedHashMap<>();
+    // The namespaces already written
+    private final Set<String> written = new HashSet<>();
+
+    BlockTableWriter(Filer filer, Messager messager, Elements elements, Types types) {
+        this.filer = filer;
+        this.messager = messager;
+        this.elements = elements;
+        this.types = types;
+    }
+
+    /**
+     * Adds a block.
+     *
+     * @param element The annotated element
+     * @param namespace The namespace
+     * @param blockname The block name
+     * @param itemModels The item model of each variant as
+     *            {@code namespace:model}, or null for variants without one
+     */
+    void add(Element element, String namespace, String blockname, String[] itemModels) {
+        if (written.contains(namespace)) {
+            messager.printMessage(Kind.WARNING, "The block table for " + namespace + " was already generated. "
+                    + blockname + " was added in a later round and is not in it.", element);
+            return;
+        }
+        List<Block> blocks = namespaces.get(namespace);
+        if (blocks == null) {
+            blocks = new ArrayList<>();
+            namespaces.put(namespace, blocks);
+        }
+        for (Block block : blocks) {
+            if (block.name.equals(blockname)) {
+                // the first definition wins, same as the block's files
+                block.origins.add(element);
+                return;
+            }
+        }
+        blocks.add(new Block(element, blockname, itemModels));
+    }
+
+    /**
+     * Writes the namespaces added this round.
+     */
+    void write() {
+        for (Map.Entry<String, List<Block>> entry : namespaces.entrySet()) {
+            String namespace = entry.getKey();
+            written.add(namespace);
+            List<Block> blocks = entry.getValue();
+            List<Element> origins = new ArrayList<>();
+            for (Block block : blocks) {
+                origins.addAll(block.origins);
+            }
+            String pkg = getPackage(origins);
+            String simpleName = getClassName(namespace);
+            String name = pkg.isEmpty() ? simpleName : pkg + "." + simpleName;
+            List<String> fields = new ArrayList<>(blocks.size());
+            String type = getFields(pkg, blocks, fields);
+            try {
+                JavaFileObject file = filer.createSourceFile(name, origins.toArray(new Element[origins.size()]));
+                Writer writer = file.openWriter();
+                try {
+                    writeTable(writer, pkg, simpleName, namespace, blocks, fields, type);
+                } finally {
+                    writer.close();
+                }
+            } catch (IOException e) {
+                messager.printMessage(Kind.ERROR, "Unable to write " + name + ": " + e, origins.get(0));
+            }
+        }
+        namespaces.clear();
+    }
+
+    private static void writeTable(Writer writer, String pkg, String name, String namespace, List<Block> blocks,
+            List<String> fields, String type) throws IOException {
+        if (!pkg.isEmpty()) {
+            writer.write("package " + pkg + ";\n\n");
+        }
+        writer.write("import java.util.Arrays;\n");
+        writer.write("import java.util.Collections;\n");
+        writer.write("import java.util.List;\n\n");
+        writer.write("/**\n");
+        writer.write(" * The blocks in the {@code " + namespace + "} namespace. Generated by Kappa.\n");
+        writer.write(" */\n");
+        writer.write("public final class " + name + " {\n\n");
+        writer.write("    /** The namespace */\n");
+        writer.write("    public static final String NAMESPACE = " + quote(namespace) + ";\n\n");
+        writer.write("    // The block names\n");
+        writer.write("    private static final String[] BLOCKS = {\n");
+        for (Block block : blocks) {
+            writer.write("            " + quote(block.name) + ",\n");
+        }
+        writer.write("    };\n\n");
+        writer.write("    // The item model of each meta of each block, or null for none\n");
+        writer.write("    private static final String[][] ITEM_MODELS = {\n");
+        for (Block block : blocks) {
+            writer.write("            " + array(block.itemModels, false) + ",\n");
+        }
+        writer.write("    };\n\n");
+        writer.write("    // The item models of each block, without nulls\n");
+        writer.write("    private static final String[][] VARIANTS = {\n");
+        for (Block block : blocks) {
+            writer.write("            " + array(block.itemModels, true) + ",\n");
+        }
+        writer.write("    };\n\n");
+        writer.write("    private " + name + "() {\n");
+        writer.write("    }\n\n");
+
+        writer.write("    /**\n");
+        writer.write("     * @return The number of blocks\n");
+        writer.write("     */\n");
+        writer.write("    public static int getBlockCount() {\n");
+        writer.write("        return BLOCKS.length;\n");
+        writer.write("    }\n\n");
+        writer.write("    /**\n");
+        writer.write("     * @param index The index of the block\n");
+        writer.write("     * @return The block name\n");
+        writer.write("     */\n");
+        writer.write("    public static String getBlock(int index) {\n");
+        writer.write("        return BLOCKS[index];\n");
+        writer.write("    }\n\n");
+        writer.write("    /**\n");
+        writer.write("     * @param index The index of the block\n");
+        writer.write("     * @return The item model of each meta, or null for metas without one\n");
+        writer.write("     */\n");
+        writer.write("    public static List<String> getItemModels(int index) {\n");
+        writer.write("        return Collections.unmodifiableList(Arrays.asList(ITEM_MODELS[index]));\n");
+        writer.write("    }\n\n");
+
+        writer.write("    /**\n");
+        writer.write("     * Registers the item models and variants of every block.\n");
+        writer.write("     *\n");
+        writer.write("     * @param registrar The registrar\n");
+        writer.write("     */\n");
+        writer.write("    public static void registerAll(Registrar registrar) {\n");
+        writer.write("        // read now, the fields are set after this class is loaded\n");
+        writer.write("        " + type + "[] blocks = {\n");
+        for (String field : fields) {
+            writer.write("                " + (field == null ? "null" : field) + ",\n");
+        }
+        writer.write("        };\n");
+        writer.write("        for (int i = 0; i < BLOCKS.length; i++) {\n");
+        writer.write("            String[] models = ITEM_MODELS[i];\n");
+        writer.write("            for (int meta = 0; meta < models.length; meta++) {\n");
+        writer.write("                if (models[meta] != null) {\n");
+        writer.write("                    registrar.registerItemModel(blocks[i], BLOCKS[i], meta, models[meta]);\n");
+        writer.write("                }\n");
+        writer.write("            }\n");
+        writer.write("            registrar.registerVariants(blocks[i], BLOCKS[i], VARIANTS[i].clone());\n");
+        writer.write("        }\n");
+        writer.write("    }\n\n");
+
+        writer.write("    /**\n");
+        writer.write("     * Receives the models of each block.\n");
+        writer.write("     */\n");
+        writer.write("    public interface Registrar {\n\n");
+        writer.write("        /**\n");
+        writer.write("         * Registers the model of one meta of a block's item.\n");
+        writer.write("         *\n");
+        writer.write("         * @param block The block, or null if its field can't be read from here\n");
+        writer.write("         * @param name The block name\n");
+        writer.write("         * @param meta The meta\n");
+        writer.write("         * @param model The model as namespace:model\n");
+        writer.write("         */\n");
+        writer.write("        void registerItemModel(" + type + " block, String name, int meta, String model);\n\n");
+        writer.write("        /**\n");
+        writer.write("         * Registers every model of a block's item.\n");
+        writer.write("         *\n");
+        writer.write("         * @param block The block, or null if its field can't be read from here\n");
+        writer.write("         * @param name The block name\n");
+        writer.write("         * @param models The models as namespace:model\n");
+        writer.write("         */\n");
+        writer.write("        void registerVariants(" + type + " block, String name, String[] models);\n");
+        writer.write("    }\n");
+        writer.write("}\n");
+    }
+
+    /**
+     * Finds the field each block can be read from in a package, or null for
+     * blocks which can't be.
+     *
+     * @return The closest class every field's type extends
+     */
+    private String getFields(String pkg, List<Block> blocks, List<String> fields) {
+        TypeMirror common = null;
+        for (Block block : blocks) {
+            Element element = block.origins.get(0);
+            if (element.getKind() != ElementKind.FIELD || !element.getModifiers().contains(Modifier.STATIC)
+                    || element.asType().getKind() != TypeKind.DECLARED || !isAccessible(element, pkg)) {
+                fields.add(null);
+                continue;
+            }
+            TypeElement owner = (TypeElement) element.getEnclosingElement();
+            fields.add(owner.getQualifiedName() + "." + element.getSimpleName());
+            TypeMirror type = types.erasure(element.asType());
+            if (common == null) {
+                common = type;
+            }
+            while (!types.isAssignable(type, common)) {
+                common = getSuperclass(common);
+            }
+        }
+        // the table has to be able to name it too
+        while (common != null && !isAccessible(types.asElement(common), pkg)) {
+            common = getSuperclass(common);
+        }
+        return common == null ? "Object" : ((TypeElement) types.asElement(common)).getQualifiedName().toString();
+    }
+
+    /**
+     * The erased superclass of a class, or {@code Object} for interfaces.
+     */
+    private TypeMirror getSuperclass(TypeMirror type) {
+        TypeMirror superclass = ((TypeElement) types.asElement(type)).getSuperclass();
+        if (superclass.getKind() != TypeKind.DECLARED) {
+            return elements.getTypeElement(Object.class.getName()).asType();
+        }
+        return types.erasure(superclass);
+    }
+
+    /**
+     * Tests if an element and every class it is in can be named from a
+     * package.
+     */
+    private boolean isAccessible(Element element, String pkg) {
+        boolean samePackage = elements.getPackageOf(element).getQualifiedName().contentEquals(pkg);
+        while (element.getKind() != ElementKind.PACKAGE) {
+            if (element.getKind() != ElementKind.FIELD && !element.getKind().isClass()
+                    && !element.getKind().isInterface()) {
+                // local classes have no name outside their method
+                return false;
+            }
+            Set<Modifier> modifiers = element.getModifiers();
+            if (modifiers.contains(Modifier.PRIVATE) || !samePackage && !modifiers.contains(Modifier.PUBLIC)) {
+                return false;
+            }
+            element = element.getEnclosingElement();
+        }
+        return true;
+    }
+
+    /**
+     * The package shared by every class with blocks in a namespace, or the
+     * first of their packages if they share none.
+     */
+    private String getPackage(List<Element> origins) {
+        String common = null;
+        String first = null;
+        for (Element origin : origins) {
+            String pkg = elements.getPackageOf(origin).getQualifiedName().toString();
+            if (first == null || pkg.compareTo(first) < 0) {
+                first = pkg;
+            }
+            if (common == null) {
+                common = pkg;
+            }
+            while (!common.isEmpty() && !(pkg.equals(common) || pkg.startsWith(common + "."))) {
+                int dot = common.lastIndexOf('.');
+                common = dot < 0 ? "" : common.substring(0, dot);
+            }
+        }
+        return common.isEmpty() ? first : common;
+    }
+
+    /**
+     * Makes a class name from a namespace, e.g. {@code my_mod} becomes
+     * {@code MyModBlockTable}.
+     */
+    private static String getClassName(String namespace) {
+        StringBuilder name = new StringBuilder();
+        boolean upper = true;
+        for (int i = 0; i < namespace.length(); i++) {
+            char c = namespace.charAt(i);
+            if (!Character.isJavaIdentifierPart(c) || c == '_' || c == '$') {
+                upper = true;
+                continue;
+            }
+            name.append(upper ? Character.toUpperCase(c) : c);
+            upper = false;
+        }
+        if (name.length() == 0 || !Character.isJavaIdentifierStart(name.charAt(0))) {
+            name.insert(0, '_');
+        }
+        return name.append(SUFFIX).toString();
+    }
+
+    private static String array(String[] values, boolean skipNulls) {
+        StringBuilder array = new StringBuilder("{ ");
+        boolean first = true;
+        for (String value : values) {
+            if (value == null && skipNulls) {
+                continue;
+            }
+            if (!first) {
+                array.append(", ");
+            }
+            array.append(value == null ? "null" : quote(value));
+            first = false;
+        }
+        return array.append(first ? "}" : " }").toString();
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20 || c > 0x7e) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static class Block {
+        private final List<Element> origins = new ArrayList<>(1);
+        private final String name;
+        private final String[] itemModels;
+
+        private Block(Element origin, String name, String[] itemModels) {
+            this.origins.add(origin);
+            this.name = name;
+            this.itemModels = itemModels;
+        }
+    }
+}
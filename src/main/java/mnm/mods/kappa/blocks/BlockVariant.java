@@ -9,7 +9,7 @@ import java.lang.annotation.Target;
  * has a default so you can change what you need.
  */
 @Target({})
-@Retention(RetentionPolicy.SOURCE)
+@Retention(RetentionPolicy.CLASS)
 public @interface BlockVariant {
 
     /**
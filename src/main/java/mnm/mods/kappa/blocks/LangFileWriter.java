@@ -0,0 +1,175 @@
+package mnm.mods.kappa.blocks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.lang.model.element.Element;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Collects the display names of blocks in every round and writes one sorted
+ * {@code en_US.kappa.lang} for each namespace when processing is over. It sits
+ * next to {@code en_US.lang} instead of replacing it, as resources are copied
+ * to the same path and only one would end up in the jar, so the build has to
+ * merge the two. Keys already in a lang file in the resource roots are left
+ * out, so names written by hand always win the merge.
+ */
+class LangFileWriter {
+
+    private static final String LANG = "en_US.lang";
+    private static final String GENERATED = "en_US.kappa.lang";
+
+    private final Filer filer;
+    private final Messager messager;
+    // Null if there are no resource roots
+    private final String roots;
+
+    // The keys of each namespace, sorted
+    private final Map<String, Map<String, String>> namespaces = new TreeMap<>();
+    private final Map<String, List<Element>> origins = new HashMap<>();
+
+    /**
+     * @param filer The filer
+     * @param messager The messager
+     * @param roots The resource roots separated by the path separator, or null
+     */
+    LangFileWriter(Filer filer, Messager messager, String roots) {
+        this.filer = filer;
+        this.messager = messager;
+        this.roots = roots;
+    }
+
+    /**
+     * Adds the display name of a block as {@code tile.<blockname>.name}.
+     *
+     * @param element The annotated element
+     * @param namespace The namespace
+     * @param blockname The block name
+     * @param displayName The display name
+     */
+    void add(Element element, String namespace, String blockname, String displayName) {
+        Map<String, String> keys = namespaces.get(namespace);
+        if (keys == null) {
+            keys = new TreeMap<>();
+            namespaces.put(namespace, keys);
+            origins.put(namespace, new ArrayList<Element>());
+        }
+        String key = "tile." + blockname + ".name";
+        String existing = keys.get(key);
+        if (existing == null) {
+            keys.put(key, displayName);
+        } else if (!existing.equals(displayName)) {
+            messager.printMessage(Kind.WARNING, key + " is already named " + existing, element);
+        }
+        origins.get(namespace).add(element);
+    }
+
+    /**
+     * Writes the lang file of every namespace. Only call this once, when
+     * processing is over.
+     */
+    void write() {
+        for (Map.Entry<String, Map<String, String>> entry : namespaces.entrySet()) {
+            String namespace = entry.getKey();
+            Map<String, String> keys = entry.getValue();
+            if (roots != null) {
+                keys.keySet().removeAll(readExisting(namespace).keySet());
+                if (keys.isEmpty()) {
+                    continue;
+                }
+            }
+            List<Element> elements = origins.get(namespace);
+            try {
+                FileObject file = filer.createResource(StandardLocation.CLASS_OUTPUT, "assets." + namespace
+                        + ".lang", GENERATED, elements.toArray(new Element[elements.size()]));
+                Writer writer = new OutputStreamWriter(file.openOutputStream(), StandardCharsets.UTF_8);
+                try {
+                    for (Map.Entry<String, String> key : keys.entrySet()) {
+                        writer.write(key.getKey() + "=" + key.getValue() + "\n");
+                    }
+                } finally {
+                    writer.close();
+                }
+            } catch (IOException e) {
+                messager.printMessage(Kind.ERROR, "Unable to write the lang file of " + namespace + ": " + e,
+                        elements.get(0));
+            }
+        }
+        namespaces.clear();
+        origins.clear();
+    }
+
+    /**
+     * Reads the keys of a namespace's lang files in the resource roots. Roots
+     * which don't exist were already reported by the texture index.
+     */
+    private Map<String, String> readExisting(String namespace) {
+        Map<String, String> keys = new HashMap<>();
+        String name = "assets/" + namespace + "/lang/" + LANG;
+        for (String root : roots.split(File.pathSeparator)) {
+            if (root.isEmpty()) {
+                continue;
+            }
+            Path path = Paths.get(root);
+            try {
+                if (Files.isDirectory(path)) {
+                    read(path.resolve(name), keys);
+                } else if (Files.isRegularFile(path)) {
+                    URI uri = URI.create("jar:" + path.toUri());
+                    FileSystem zip = FileSystems.newFileSystem(uri, new HashMap<String, Object>());
+                    try {
+                        read(zip.getPath("/" + name), keys);
+                    } finally {
+                        zip.close();
+                    }
+                }
+            } catch (IOException e) {
+                messager.printMessage(Kind.WARNING, "Unable to read the lang file of " + namespace + " in "
+                        + root + ": " + e);
+            }
+        }
+        return keys;
+    }
+
+    private static void read(Path lang, Map<String, String> keys) throws IOException {
+        if (!Files.isRegularFile(lang)) {
+            return;
+        }
+        BufferedReader reader = Files.newBufferedReader(lang, StandardCharsets.UTF_8);
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int equals = line.indexOf('=');
+                if (line.startsWith("#") || equals <= 0) {
+                    continue;
+                }
+                String key = line.substring(0, equals);
+                // the first root with a key wins
+                if (!keys.containsKey(key)) {
+                    keys.put(key, line.substring(equals + 1));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package mnm.mods.kappa.blocks;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import javax.annotation.processing.Filer;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Checks generated resources against the files already in the class output so
+ * writes with identical content can be skipped, keeping their modified time.
+ * The existing file is only read when the sizes match, and only until the
+ * first difference. It isn't memory mapped, since a mapping lives until it is
+ * garbage collected and Windows can't rewrite a mapped file.
+ */
+class OutputCache {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Filer filer;
+    // Reused for every comparison, which all happen on the compiler's thread
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private int skipped;
+
+    OutputCache(Filer filer) {
+        this.filer = filer;
+    }
+
+    /**
+     * Tests if a resource in the class output already has the given content.
+     * Counts it as a skipped write if it does.
+     *
+     * @param pkg The resource package
+     * @param name The resource name
+     * @param content The encoded content
+     * @return True if the file exists with the same content
+     */
+    boolean isUnchanged(String pkg, String name, byte[] content) {
+        Path path;
+        try {
+            FileObject file = filer.getResource(StandardLocation.CLASS_OUTPUT, pkg, name);
+            URI uri = file.toUri();
+            if (!"file".equals(uri.getScheme())) {
+                return false;
+            }
+            path = Paths.get(uri);
+            if (!Files.isRegularFile(path) || Files.size(path) != content.length) {
+                return false;
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            // doesn't exist or isn't on the file system
+            return false;
+        }
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            int offset = 0;
+            while (offset < content.length) {
+                buffer.clear();
+                buffer.limit(Math.min(BUFFER_SIZE, content.length - offset));
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0) {
+                        // shrunk since its size was checked
+                        return false;
+                    }
+                }
+                buffer.flip();
+                if (!buffer.equals(ByteBuffer.wrap(content, offset, buffer.limit()))) {
+                    return false;
+                }
+                offset += buffer.limit();
+            }
+            skipped++;
+            return true;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    // silence
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The number of writes that were skipped
+     */
+    int getSkipped() {
+        return skipped;
+    }
+}
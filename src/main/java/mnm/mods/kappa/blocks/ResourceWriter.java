@@ -0,0 +1,166 @@
+package mnm.mods.kappa.blocks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.annotation.processing.Messager;
+import javax.lang.model.element.Element;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
+
+/**
+ * Writes generated resources on a background thread. Files are created and
+ * opened by the Filer on the compiler's thread, since opening one touches the
+ * file manager's caches, and only their content is written and closed here.
+ * The queue is bounded, so the compiler waits when the writer falls behind and
+ * no more than that many files are open.
+ * Failures are printed as errors on the compiler's thread the next time it
+ * asks, and {@link #finish()} waits for every pending write.
+ */
+class ResourceWriter {
+
+    private static final Write STOP = new Write(null, null, null, null);
+
+    private final Messager messager;
+    private final BlockingQueue<Write> queue;
+    private final Queue<Failure> failures = new ConcurrentLinkedQueue<>();
+    private Thread thread;
+
+    /**
+     * @param messager The messager to print failures with
+     * @param capacity The most writes waiting at once
+     */
+    ResourceWriter(Messager messager, int capacity) {
+        this.messager = messager;
+        this.queue = new ArrayBlockingQueue<>(Math.max(capacity, 1));
+    }
+
+    /**
+     * Opens a file and queues content to be written to it. Waits if the queue
+     * is full.
+     *
+     * @param file The created file
+     * @param content The encoded content
+     * @param element The element to print failures on
+     * @throws IOException If the file can't be opened
+     */
+    void submit(FileObject file, byte[] content, Element element) throws IOException {
+        if (thread == null) {
+            thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    drain();
+                }
+            }, "Kappa resource writer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        put(new Write(file.getName(), file.openOutputStream(), content, element));
+    }
+
+    /**
+     * Prints the failures since the last call.
+     */
+    void reportFailures() {
+        Failure failure;
+        while ((failure = failures.poll()) != null) {
+            messager.printMessage(Kind.ERROR, "Unable to write " + failure.write.name
+                    + ": " + failure.cause, failure.write.element);
+        }
+    }
+
+    /**
+     * Waits for every queued write to finish, stops the thread and prints any
+     * failures. Call once when processing is over.
+     */
+    void finish() {
+        if (thread != null) {
+            put(STOP);
+            boolean interrupted = false;
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            thread = null;
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        reportFailures();
+    }
+
+    private void put(Write write) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(write);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Write write;
+            try {
+                write = queue.take();
+            } catch (InterruptedException e) {
+                // only finish() stops the writer
+                continue;
+            }
+            if (write == STOP) {
+                return;
+            }
+            try {
+                write.run();
+            } catch (IOException | RuntimeException e) {
+                failures.add(new Failure(write, e));
+            }
+        }
+    }
+
+    private static class Write {
+        private final String name;
+        private final OutputStream out;
+        private final byte[] content;
+        private final Element element;
+
+        private Write(String name, OutputStream out, byte[] content, Element element) {
+            this.name = name;
+            this.out = out;
+            this.content = content;
+            this.element = element;
+        }
+
+        private void run() throws IOException {
+            try {
+                out.write(content);
+                out.flush();
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    private static class Failure {
+        private final Write write;
+        private final Exception cause;
+
+        private Failure(Write write, Exception cause) {
+            this.write = write;
+            this.cause = cause;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package mnm.mods.kappa.blocks;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.annotation.processing.Messager;
+import javax.tools.Diagnostic.Kind;
+
+/**
+ * An index of the textures in the project's resource roots. Each root is a
+ * directory or a zip containing {@code assets}. The roots are scanned the
+ * first time a texture is looked up, then every lookup is a set lookup.
+ */
+class TextureIndex {
+
+    private static final String SUFFIX = ".png";
+
+    private final Messager messager;
+    private final String roots;
+    // Textures as namespace:path, e.g. modid:blocks/stone
+    private Set<String> textures;
+
+    /**
+     * @param messager The messager to warn about bad roots with
+     * @param roots The roots, separated by the path separator
+     */
+    TextureIndex(Messager messager, String roots) {
+        this.messager = messager;
+        this.roots = roots;
+    }
+
+    /**
+     * Tests if a texture exists in any root.
+     *
+     * @param texture The texture as {@code namespace:path}
+     * @return True if it exists
+     */
+    boolean contains(String texture) {
+        if (textures == null) {
+            textures = scan();
+        }
+        return textures.contains(texture);
+    }
+
+    private Set<String> scan() {
+        Set<String> found = new HashSet<>();
+        for (String root : roots.split(File.pathSeparator)) {
+            if (root.isEmpty()) {
+                continue;
+            }
+            Path path = Paths.get(root);
+            try {
+                if (Files.isDirectory(path)) {
+                    scan(path.resolve("assets"), found);
+                } else if (Files.isRegularFile(path)) {
+                    URI uri = URI.create("jar:" + path.toUri());
+                    FileSystem zip = FileSystems.newFileSystem(uri, new HashMap<String, Object>());
+                    try {
+                        scan(zip.getPath("/assets"), found);
+                    } finally {
+                        zip.close();
+                    }
+                } else {
+                    messager.printMessage(Kind.WARNING, "Resource root " + root + " does not exist");
+                }
+            } catch (IOException e) {
+                messager.printMessage(Kind.WARNING, "Unable to read resource root " + root + ": " + e);
+            }
+        }
+        return Collections.unmodifiableSet(found);
+    }
+
+    private static void scan(final Path assets, final Set<String> found) throws IOException {
+        if (!Files.isDirectory(assets)) {
+            return;
+        }
+        Files.walkFileTree(assets, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                // assets/<namespace>/textures/<path>.png
+                Path relative = assets.relativize(file);
+                String name = relative.toString().replace(relative.getFileSystem().getSeparator(), "/");
+                int slash = name.indexOf('/');
+                if (slash > 0 && name.startsWith("textures/", slash + 1) && name.endsWith(SUFFIX)) {
+                    String namespace = name.substring(0, slash);
+                    String path = name.substring(slash + 1 + "textures/".length(),
+                            name.length() - SUFFIX.length());
+                    found.add(namespace + ":" + path);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,230 @@
+package mnm.mods.kappa.daemon;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+
+/**
+ * A file manager which lives across compile jobs. Listings of the class path
+ * and platform class path are kept in memory and reused by later jobs, along
+ * with the file objects in them. Each job only checks what its listings
+ * depend on: the size and modified time of each jar, and the modified time of
+ * each listed package's directories. Files opened for output are recorded so
+ * each job can report what it generated.
+ */
+class DaemonFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+
+    private final Map<ListKey, List<JavaFileObject>> listings = new HashMap<>();
+    // The modified times of each listed package's directory in every entry
+    private final Map<String, List<Long>> packages = new HashMap<>();
+    private final List<FileObject> outputs = new ArrayList<>();
+    private List<File> classpath;
+    private List<Long> entries;
+    private int hits;
+    private int misses;
+
+    DaemonFileManager(StandardJavaFileManager fileManager) {
+        super(fileManager);
+    }
+
+    /**
+     * Sets the locations of the next job. Every job sets all of them, so
+     * nothing is left over from the job before. Cached listings are dropped
+     * if the class path or a jar in it changed, or if a file was added to or
+     * removed from their package.
+     *
+     * @param classpath The class path
+     * @param classOutput The class output, or null for next to the sources
+     * @param sourceOutput The generated source output, or null for the class
+     *            output
+     * @throws IOException If a location can't be set
+     */
+    void prepare(List<File> classpath, File classOutput, File sourceOutput) throws IOException {
+        List<Long> entries = stampEntries(classpath);
+        if (!classpath.equals(this.classpath) || !entries.equals(this.entries)) {
+            listings.clear();
+            packages.clear();
+            this.classpath = new ArrayList<>(classpath);
+            this.entries = entries;
+        } else {
+            Iterator<Map.Entry<String, List<Long>>> iter = packages.entrySet().iterator();
+            while (iter.hasNext()) {
+                Map.Entry<String, List<Long>> entry = iter.next();
+                if (!stampPackage(entry.getKey()).equals(entry.getValue())) {
+                    removeListings(entry.getKey());
+                    iter.remove();
+                }
+            }
+        }
+        fileManager.setLocation(StandardLocation.CLASS_PATH, classpath);
+        fileManager.setLocation(StandardLocation.CLASS_OUTPUT, toPath(classOutput));
+        fileManager.setLocation(StandardLocation.SOURCE_OUTPUT, toPath(sourceOutput));
+        outputs.clear();
+    }
+
+    /**
+     * @param files The source files
+     * @return The files as compilation units
+     */
+    Iterable<? extends JavaFileObject> getSources(List<File> files) {
+        return fileManager.getJavaFileObjectsFromFiles(files);
+    }
+
+    /**
+     * @return The files opened for output since the job was prepared
+     */
+    List<FileObject> getOutputs() {
+        return Collections.unmodifiableList(outputs);
+    }
+
+    /**
+     * @return The number of listings answered from memory
+     */
+    int getHits() {
+        return hits;
+    }
+
+    /**
+     * @return The number of listings read from the file system
+     */
+    int getMisses() {
+        return misses;
+    }
+
+    @Override
+    public Iterable<JavaFileObject> list(Location location, String packageName, Set<Kind> kinds,
+            boolean recurse) throws IOException {
+        if (location != StandardLocation.CLASS_PATH && location != StandardLocation.PLATFORM_CLASS_PATH) {
+            return super.list(location, packageName, kinds, recurse);
+        }
+        boolean classpath = location == StandardLocation.CLASS_PATH;
+        if (classpath && recurse) {
+            // subpackages aren't stamped
+            return super.list(location, packageName, kinds, recurse);
+        }
+        ListKey key = new ListKey(location, packageName, kinds, recurse);
+        List<JavaFileObject> list = listings.get(key);
+        if (list != null) {
+            hits++;
+            return list;
+        }
+        misses++;
+        if (classpath && !packages.containsKey(packageName)) {
+            // stamped first, so changes made while listing are seen next job
+            packages.put(packageName, stampPackage(packageName));
+        }
+        list = new ArrayList<>();
+        for (JavaFileObject file : super.list(location, packageName, kinds, recurse)) {
+            list.add(file);
+        }
+        list = Collections.unmodifiableList(list);
+        listings.put(key, list);
+        return list;
+    }
+
+    @Override
+    public JavaFileObject getJavaFileForOutput(Location location, String className, Kind kind,
+            FileObject sibling) throws IOException {
+        JavaFileObject file = super.getJavaFileForOutput(location, className, kind, sibling);
+        outputs.add(file);
+        return file;
+    }
+
+    @Override
+    public FileObject getFileForOutput(Location location, String packageName, String relativeName,
+            FileObject sibling) throws IOException {
+        FileObject file = super.getFileForOutput(location, packageName, relativeName, sibling);
+        outputs.add(file);
+        return file;
+    }
+
+    private void removeListings(String packageName) {
+        Iterator<ListKey> iter = listings.keySet().iterator();
+        while (iter.hasNext()) {
+            ListKey key = iter.next();
+            if (key.location == StandardLocation.CLASS_PATH && key.packageName.equals(packageName)) {
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Gets the size and modified time of each jar on the class path.
+     * Directories are only marked as directories, their packages are stamped
+     * as they are listed.
+     */
+    private static List<Long> stampEntries(List<File> classpath) {
+        List<Long> stamp = new ArrayList<>(classpath.size() * 2);
+        for (File file : classpath) {
+            boolean directory = file.isDirectory();
+            stamp.add(directory ? -1 : file.length());
+            stamp.add(directory ? 0 : file.lastModified());
+        }
+        return stamp;
+    }
+
+    /**
+     * Gets the modified time of a package's directory in each class path
+     * entry, which changes when a file is added to or removed from it. The
+     * time is 0 where there is no such directory.
+     */
+    private List<Long> stampPackage(String packageName) {
+        String path = packageName.replace('.', File.separatorChar);
+        List<Long> stamp = new ArrayList<>(classpath.size());
+        for (int i = 0; i < classpath.size(); i++) {
+            // jars are already stamped
+            stamp.add(entries.get(i * 2) < 0 ? new File(classpath.get(i), path).lastModified() : 0);
+        }
+        return stamp;
+    }
+
+    private static List<File> toPath(File file) {
+        return file == null ? null : Collections.singletonList(file);
+    }
+
+    private static class ListKey {
+        private final JavaFileManager.Location location;
+        private final String packageName;
+        private final Set<Kind> kinds;
+        private final boolean recurse;
+
+        private ListKey(JavaFileManager.Location location, String packageName, Set<Kind> kinds,
+                boolean recurse) {
+            this.location = location;
+            this.packageName = packageName;
+            this.kinds = kinds.isEmpty() ? EnumSet.noneOf(Kind.class) : EnumSet.copyOf(kinds);
+            this.recurse = recurse;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(location, packageName, kinds, recurse);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ListKey)) {
+                return false;
+            }
+            ListKey other = (ListKey) obj;
+            return location == other.location && packageName.equals(other.packageName)
+                    && kinds.equals(other.kinds) && recurse == other.recurse;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package mnm.mods.kappa.daemon;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.ServiceLoader;
+
+import javax.annotation.processing.Processor;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.ToolProvider;
+
+/**
+ * Keeps a compiler and Kappa's processors warm between compiles. Jobs are
+ * read as lines from stdin, or from connections to a local port with
+ * {@code --port <port>}. A job is built with these lines:
+ *
+ * <pre>
+ * classpath &lt;path list&gt;
+ * option &lt;javac option&gt;
+ * source &lt;file&gt;
+ * compile
+ * </pre>
+ *
+ * {@code option} and {@code source} may be repeated, with one javac argument
+ * for each {@code option}. {@code -d}, {@code -s} and {@code -cp} are
+ * allowed and only apply to their job, but other options which set a location,
+ * like {@code -sourcepath}, fail the job. {@code compile} runs the job with
+ * every processor in {@code META-INF/services} and answers with:
+ *
+ * <pre>
+ * diagnostic &lt;kind&gt; &lt;file&gt;:&lt;line&gt;: &lt;message&gt;
+ * resource &lt;generated file&gt;
+ * done ok|failed
+ * </pre>
+ *
+ * Newlines in messages are sent as {@code \n}. {@code stats} answers with how
+ * many class path listings were reused from earlier jobs. {@code quit} ends a
+ * connection and {@code shutdown} stops the daemon.
+ *
+ * @author Matthew Messinger
+ */
+public class KappaDaemon {
+
+    private final JavaCompiler compiler;
+    private final DaemonFileManager fileManager;
+
+    public KappaDaemon(JavaCompiler compiler) {
+        this.compiler = compiler;
+        this.fileManager = new DaemonFileManager(compiler.getStandardFileManager(null, null,
+                StandardCharsets.UTF_8));
+    }
+
+    public static void main(String[] args) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            System.err.println("No compiler is available. Run with a JDK.");
+            System.exit(1);
+        }
+        KappaDaemon daemon = new KappaDaemon(compiler);
+        if (args.length == 2 && args[0].equals("--port")) {
+            daemon.listen(Integer.parseInt(args[1]));
+        } else {
+            daemon.serve(System.in, System.out);
+        }
+    }
+
+    /**
+     * Accepts connections on a loopback port one at a time until a
+     * {@code shutdown} is received.
+     *
+     * @param port The port, or 0 for any
+     * @throws IOException If the port can't be bound
+     */
+    public void listen(int port) throws IOException {
+        ServerSocket server = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+        try {
+            System.out.println("listening " + server.getLocalPort());
+            System.out.flush();
+            boolean running = true;
+            while (running) {
+                Socket socket = server.accept();
+                try {
+                    running = serve(socket.getInputStream(), socket.getOutputStream());
+                } catch (IOException e) {
+                    System.err.println("Connection failed: " + e);
+                } finally {
+                    socket.close();
+                }
+            }
+        } finally {
+            server.close();
+        }
+    }
+
+    /**
+     * Runs the jobs read from a stream until it ends or a {@code quit} or
+     * {@code shutdown} is received.
+     *
+     * @param in The requests
+     * @param out The responses
+     * @return False if the daemon should shut down
+     * @throws IOException If the stream fails
+     */
+    public boolean serve(InputStream in, OutputStream out) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        List<File> classpath = Collections.emptyList();
+        List<String> options = new ArrayList<>();
+        List<File> sources = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            int space = line.indexOf(' ');
+            String command = space < 0 ? line : line.substring(0, space);
+            String arg = space < 0 ? "" : line.substring(space + 1);
+            switch (command) {
+            case "classpath":
+                classpath = toPath(arg);
+                break;
+            case "option":
+                options.add(arg);
+                break;
+            case "source":
+                sources.add(new File(arg));
+                break;
+            case "compile":
+                compile(classpath, options, sources, writer);
+                options.clear();
+                sources.clear();
+                break;
+            case "stats":
+                writer.println("stats " + fileManager.getHits() + " hits " + fileManager.getMisses() + " misses");
+                break;
+            case "quit":
+                writer.flush();
+                return true;
+            case "shutdown":
+                writer.flush();
+                return false;
+            case "":
+                break;
+            default:
+                writer.println("error Unknown command " + command);
+            }
+            writer.flush();
+        }
+        return true;
+    }
+
+    private void compile(List<File> classpath, List<String> options, List<File> sources,
+            PrintWriter writer) {
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        boolean success;
+        try {
+            // javac would set locations on the shared file manager for good
+            List<String> javacOptions = new ArrayList<>();
+            File classOutput = null;
+            File sourceOutput = null;
+            for (int i = 0; i < options.size(); i++) {
+                String option = options.get(i);
+                switch (option) {
+                case "-d":
+                    classOutput = new File(getValue(options, ++i, option));
+                    break;
+                case "-s":
+                    sourceOutput = new File(getValue(options, ++i, option));
+                    break;
+                case "-cp":
+                case "-classpath":
+                case "--class-path":
+                    classpath = toPath(getValue(options, ++i, option));
+                    break;
+                default:
+                    if (isLocationOption(option)) {
+                        throw new IllegalArgumentException(option + " is not supported by the daemon");
+                    }
+                    javacOptions.add(option);
+                }
+            }
+            fileManager.prepare(classpath, classOutput, sourceOutput);
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, javacOptions,
+                    null, fileManager.getSources(sources));
+            // new instances each job, the classes stay loaded and warm
+            List<Processor> processors = new ArrayList<>();
+            for (Processor processor : ServiceLoader.load(Processor.class, KappaDaemon.class.getClassLoader())) {
+                processors.add(processor);
+            }
+            task.setProcessors(processors);
+            success = task.call();
+        } catch (IOException | RuntimeException e) {
+            writer.println("error " + escape(e.toString()));
+            success = false;
+        }
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            String source = diagnostic.getSource() == null ? "" : diagnostic.getSource().getName();
+            writer.println("diagnostic " + diagnostic.getKind() + " " + source + ":"
+                    + diagnostic.getLineNumber() + ": " + escape(diagnostic.getMessage(null)));
+        }
+        for (FileObject output : fileManager.getOutputs()) {
+            if (!(output instanceof JavaFileObject)
+                    || ((JavaFileObject) output).getKind() == JavaFileObject.Kind.OTHER) {
+                writer.println("resource " + output.getName());
+            }
+        }
+        writer.println("done " + (success ? "ok" : "failed"));
+    }
+
+    private static String getValue(List<String> options, int index, String option) {
+        if (index >= options.size()) {
+            throw new IllegalArgumentException(option + " requires a value");
+        }
+        return options.get(index);
+    }
+
+    /**
+     * Tests if an option sets a location other than the ones each job sets.
+     */
+    private static boolean isLocationOption(String option) {
+        String name = option.indexOf('=') < 0 ? option : option.substring(0, option.indexOf('='));
+        switch (name) {
+        case "-d":
+        case "-s":
+        case "-h":
+        case "-cp":
+        case "-classpath":
+        case "--class-path":
+        case "-sourcepath":
+        case "--source-path":
+        case "-processorpath":
+        case "--processor-path":
+        case "--processor-module-path":
+        case "-bootclasspath":
+        case "--boot-class-path":
+        case "-extdirs":
+        case "-endorseddirs":
+        case "--system":
+        case "--module-path":
+        case "-p":
+        case "--module-source-path":
+        case "--upgrade-module-path":
+            return true;
+        default:
+            return option.startsWith("-Xbootclasspath");
+        }
+    }
+
+    private static List<File> toPath(String path) {
+        List<File> files = new ArrayList<>();
+        for (String file : path.split(File.pathSeparator)) {
+            if (!file.isEmpty()) {
+                files.add(new File(file));
+            }
+        }
+        return files;
+    }
+
+    private static String escape(String message) {
+        return message.replace("\\", "\\\\").replace("\r", "").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,294 @@
+package mnm.mods.kappa.fap;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.JavaFileObject;
+
+import mnm.mods.kappa.SymbolCache;
+
+/**
+ * Generates a class of event listeners for each class with
+ * {@code @SubscribeEvent} methods. Each method gets an {@code IEventListener}
+ * which calls it directly, and {@code register(target, busID)} adds them all
+ * to their events' listener lists the way {@code EventBus.register} would.
+ * The bus doesn't know about them, so {@code EventBus.unregister} can't remove
+ * them. {@code unregister(target, busID)} does instead. Listeners are equal
+ * when they call the same target, so it needs no state.
+ * The class is named after its owner, e.g. {@code MyHandler_EventInvokers},
+ * and has the owner's top level class as its only originating element.
+ * <p>
+ * An owner is skipped with a warning if one of its handlers can't be called
+ * from generated code, so registration is all or nothing.
+ *
+ * @author Matthew Messinger
+ */
+final class EventInvokerWriter {
+
+    private static final String SUFFIX = "_EventInvokers";
+
+    private final Filer filer;
+    private final Messager messager;
+    private final Elements elements;
+    private final Types types;
+    private final SymbolCache symbols;
+
+    // The handlers of each owner this round
+    private final Map<TypeElement, List<ExecutableElement>> owners = new LinkedHashMap<>();
+    // The classes already generated
+    private final Set<String> generated = new HashSet<>();
+
+    EventInvokerWriter(Filer filer, Messager messager, Elements elements, Types types, SymbolCache symbols) {
+        this.filer = filer;
+        this.messager = messager;
+        this.elements = elements;
+        this.types = types;
+        this.symbols = symbols;
+    }
+
+    /**
+     * Adds the methods annotated with {@code @SubscribeEvent}.
+     *
+     * @param annotated The annotated elements
+     */
+    void addAll(Iterable<? extends Element> annotated) {
+        for (Element element : annotated) {
+            if (element.getKind() != ElementKind.METHOD) {
+                continue;
+            }
+            TypeElement owner = (TypeElement) element.getEnclosingElement();
+            List<ExecutableElement> handlers = owners.get(owner);
+            if (handlers == null) {
+                handlers = new ArrayList<>();
+                owners.put(owner, handlers);
+            }
+            handlers.add((ExecutableElement) element);
+        }
+    }
+
+    /**
+     * Writes the invokers of the owners added this round.
+     *
+     * @param annotation The {@code @SubscribeEvent} annotation type
+     */
+    void write(TypeElement annotation) {
+        String eventhandler = elements.getPackageOf(annotation).getQualifiedName().toString();
+        TypeElement eventType = symbols.getTypeElement(eventhandler + ".Event");
+        for (Map.Entry<TypeElement, List<ExecutableElement>> entry : owners.entrySet()) {
+            TypeElement owner = entry.getKey();
+            String name = GeneratedSources.getName(elements, owner, SUFFIX);
+            if (eventType == null || !generated.add(name)) {
+                continue;
+            }
+            String reason = getUnsupportedReason(owner, entry.getValue(), eventType);
+            if (reason != null) {
+                messager.printMessage(Kind.WARNING, "Event invokers for " + owner.getSimpleName()
+                        + " were not generated because " + reason + ". Register it with the event bus instead.",
+                        owner);
+                continue;
+            }
+            try {
+                JavaFileObject file = filer.createSourceFile(name, GeneratedSources.getTopLevel(owner));
+                Writer writer = file.openWriter();
+                try {
+                    writeInvokers(writer, eventhandler, owner, name, entry.getValue(), annotation);
+                } finally {
+                    writer.close();
+                }
+            } catch (IOException e) {
+                messager.printMessage(Kind.ERROR, "Unable to write " + name + ": " + e, owner);
+            }
+        }
+        owners.clear();
+    }
+
+    private void writeInvokers(Writer writer, String eventhandler, TypeElement owner, String name,
+            List<ExecutableElement> handlers, TypeElement annotation) throws IOException {
+        PackageElement pkg = elements.getPackageOf(owner);
+        String simpleName = name.substring(name.lastIndexOf('.') + 1);
+        String target = GeneratedSources.getTypeName(owner);
+        if (!pkg.isUnnamed()) {
+            writer.write("package " + pkg.getQualifiedName() + ";\n\n");
+        }
+        writer.write("import " + eventhandler + ".Event;\n");
+        writer.write("import " + eventhandler + ".EventPriority;\n");
+        writer.write("import " + eventhandler + ".IEventListener;\n");
+        writer.write("\n");
+        writer.write("/**\n");
+        writer.write(" * Event listeners for the handlers in {@link " + owner.getQualifiedName() + "}.\n");
+        writer.write(" * Generated by Kappa.\n");
+        writer.write(" */\n");
+        writer.write("public final class " + simpleName + " {\n\n");
+        writer.write("    private " + simpleName + "() {\n");
+        writer.write("    }\n\n");
+
+        writer.write("    /**\n");
+        writer.write("     * Registers every handler of a target to the listener lists of a bus.\n");
+        writer.write("     *\n");
+        writer.write("     * @param target The object the handlers are called on\n");
+        writer.write("     * @param busID The bus ID\n");
+        writer.write("     */\n");
+        writer.write("    public static void register(" + target + " target, int busID) {\n");
+        List<String> listeners = getListenerNames(handlers);
+        for (int i = 0; i < handlers.size(); i++) {
+            ExecutableElement handler = handlers.get(i);
+            writer.write("        new " + getEventName(handler) + "().getListenerList().register(busID, "
+                    + "EventPriority." + getPriority(handler, annotation) + ", new " + listeners.get(i)
+                    + "(target));\n");
+        }
+        writer.write("    }\n\n");
+
+        writer.write("    /**\n");
+        writer.write("     * Removes the handlers of a target added with {@link #register}. Use this\n");
+        writer.write("     * instead of {@code EventBus.unregister}, which doesn't know about them.\n");
+        writer.write("     *\n");
+        writer.write("     * @param target The object the handlers are called on\n");
+        writer.write("     * @param busID The bus ID\n");
+        writer.write("     */\n");
+        writer.write("    public static void unregister(" + target + " target, int busID) {\n");
+        for (int i = 0; i < handlers.size(); i++) {
+            writer.write("        new " + getEventName(handlers.get(i)) + "().getListenerList().unregister(busID, new "
+                    + listeners.get(i) + "(target));\n");
+        }
+        writer.write("    }\n");
+
+        for (int i = 0; i < handlers.size(); i++) {
+            ExecutableElement handler = handlers.get(i);
+            String listener = listeners.get(i);
+            String event = getEventName(handler);
+            writer.write("\n");
+            writer.write("    /**\n");
+            writer.write("     * Calls {@link " + owner.getQualifiedName() + "#" + handler.getSimpleName() + "("
+                    + types.erasure(handler.getParameters().get(0).asType()) + ")}.\n");
+            writer.write("     */\n");
+            writer.write("    public static final class " + listener + " implements IEventListener {\n\n");
+            writer.write("        private final " + target + " target;\n\n");
+            writer.write("        public " + listener + "(" + target + " target) {\n");
+            writer.write("            this.target = target;\n");
+            writer.write("        }\n\n");
+            writer.write("        @Override\n");
+            writer.write("        public void invoke(Event event) {\n");
+            // no cast for handlers of every event
+            String call = "target." + handler.getSimpleName()
+                    + (event.equals(eventhandler + ".Event") ? "(event);\n" : "((" + event + ") event);\n");
+            if (isReceiveCanceled(handler, annotation)) {
+                writer.write("            " + call);
+            } else {
+                writer.write("            if (!event.isCancelable() || !event.isCanceled()) {\n");
+                writer.write("                " + call);
+                writer.write("            }\n");
+            }
+            writer.write("        }\n\n");
+            // equal to any listener of the same target, so unregister can find it
+            writer.write("        @Override\n");
+            writer.write("        public boolean equals(Object obj) {\n");
+            writer.write("            return obj instanceof " + listener + " && ((" + listener
+                    + ") obj).target == target;\n");
+            writer.write("        }\n\n");
+            writer.write("        @Override\n");
+            writer.write("        public int hashCode() {\n");
+            writer.write("            return System.identityHashCode(target);\n");
+            writer.write("        }\n");
+            writer.write("    }\n");
+        }
+        writer.write("}\n");
+    }
+
+    /**
+     * Finds why an owner's handlers can't be called from generated code.
+     *
+     * @return The reason, or null if they can
+     */
+    private String getUnsupportedReason(TypeElement owner, List<ExecutableElement> handlers,
+            TypeElement eventType) {
+        if (!GeneratedSources.isAccessible(elements, owner, owner)) {
+            return "it is private";
+        }
+        for (ExecutableElement handler : handlers) {
+            Set<Modifier> modifiers = handler.getModifiers();
+            if (!modifiers.contains(Modifier.PUBLIC) || modifiers.contains(Modifier.STATIC)
+                    || handler.getParameters().size() != 1) {
+                return handler.getSimpleName() + " is not a valid handler";
+            }
+            TypeMirror parameter = types.erasure(handler.getParameters().get(0).asType());
+            if (parameter.getKind() != TypeKind.DECLARED
+                    || !types.isAssignable(parameter, types.erasure(eventType.asType()))) {
+                return handler.getSimpleName() + " does not take an event";
+            }
+            TypeElement event = (TypeElement) ((DeclaredType) parameter).asElement();
+            if (!GeneratedSources.isConstructible(elements, event, owner)) {
+                return event.getSimpleName() + " can't be created with new " + event.getSimpleName() + "()";
+            }
+        }
+        return null;
+    }
+
+    private String getPriority(ExecutableElement handler, TypeElement annotation) {
+        Object value = getValue(handler, annotation, "priority");
+        return value instanceof VariableElement ? ((VariableElement) value).getSimpleName().toString() : "NORMAL";
+    }
+
+    private boolean isReceiveCanceled(ExecutableElement handler, TypeElement annotation) {
+        return Boolean.TRUE.equals(getValue(handler, annotation, "receiveCanceled"));
+    }
+
+    private Object getValue(ExecutableElement handler, TypeElement annotation, String member) {
+        for (AnnotationMirror mirror : handler.getAnnotationMirrors()) {
+            if (mirror.getAnnotationType().asElement().equals(annotation)) {
+                for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value : elements
+                        .getElementValuesWithDefaults(mirror).entrySet()) {
+                    if (value.getKey().getSimpleName().contentEquals(member)) {
+                        return value.getValue().getValue();
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private String getEventName(ExecutableElement handler) {
+        TypeMirror parameter = types.erasure(handler.getParameters().get(0).asType());
+        return ((TypeElement) types.asElement(parameter)).getQualifiedName().toString();
+    }
+
+    /**
+     * Names each listener after its method, numbering overloads.
+     */
+    private static List<String> getListenerNames(List<ExecutableElement> handlers) {
+        List<String> names = new ArrayList<>(handlers.size());
+        Set<String> used = new HashSet<>();
+        for (ExecutableElement handler : handlers) {
+            String method = handler.getSimpleName().toString();
+            String base = Character.toUpperCase(method.charAt(0)) + method.substring(1) + "Listener";
+            String name = base;
+            for (int i = 2; !used.add(name); i++) {
+                name = base + i;
+            }
+            names.add(name);
+        }
+        return names;
+    }
+}
@@ -0,0 +1,278 @@
+package mnm.mods.kappa.fap;
+
+import java.util.Set;
+
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.NoType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+
+import mnm.mods.kappa.AnnotationIndex;
+import mnm.mods.kappa.AnnotationMember;
+import mnm.mods.kappa.Metrics;
+import mnm.mods.kappa.ProcessingUtils;
+import mnm.mods.kappa.SymbolCache;
+
+/**
+ * The checks for one version of FML. The annotation types are resolved when it
+ * is created, so only create it once the version's annotations are used.
+ *
+ * @author Matthew Messinger
+ */
+final class FmlChecks {
+
+    private static final String MOD = "Mod";
+    private static final String EVENT_HANDLER = "EventHandler";
+    private static final String INSTANCE = "Instance";
+    private static final String METADATA = "Metadata";
+    private static final String INSTANCE_FACTORY = "InstanceFactory";
+    private static final String SIDED_PROXY = "SidedProxy";
+    private static final String SUBSCRIBE_EVENT = "SubscribeEvent";
+    private static final String CANCELABLE = "Cancelable";
+    private static final String HAS_RESULT = "HasResult";
+    private static final String NETWORK_CHECK_HANDLER = "NetworkCheckHandler";
+
+    private final ProcessingUtils processingUtils;
+    private final Metrics metrics;
+
+    // object types
+    private TypeElement modType;
+    private TypeElement instanceType;
+    private TypeElement sidedProxyType;
+    private TypeElement instanceFactoryType;
+
+    private TypeElement fmlEventType;
+    private TypeElement eventType;
+    private TypeElement modMetadataType;
+    private TypeElement sideType;
+    private TypeElement stringType;
+
+    // other types
+    private NoType voidType;
+    private PrimitiveType booleanType;
+
+    // annotation members
+    private AnnotationMember<String> instanceValue;
+    private AnnotationMember<String> sidedProxyClient;
+    private AnnotationMember<String> sidedProxyServer;
+
+    /**
+     * Resolves the FML types of a version.
+     *
+     * @param processingUtils The utils to check with
+     * @param metrics The metrics to record the checks in
+     * @param fmlPackage The package FML is located in. {@code cpw.mods} for
+     *            1.7, {@code net.minecraftforge} for 1.8.
+     */
+    FmlChecks(ProcessingUtils processingUtils, Metrics metrics, String fmlPackage) {
+        this.processingUtils = processingUtils;
+        this.metrics = metrics;
+
+        SymbolCache symbols = processingUtils.getSymbols();
+        final String common = fmlPackage + ".fml.common";
+        this.modType = symbols.getTypeElement(common + ".Mod");
+        this.instanceType = symbols.getTypeElement(common + ".Mod.Instance");
+        this.sidedProxyType = symbols.getTypeElement(common + ".SidedProxy");
+        this.instanceFactoryType = symbols.getTypeElement(common + ".Mod.InstanceFactory");
+
+        this.modMetadataType = symbols.getTypeElement(common + ".ModMetadata");
+        this.fmlEventType = symbols.getTypeElement(common + ".event.FMLEvent");
+        this.eventType = symbols.getTypeElement(common + ".eventhandler.Event");
+        this.sideType = symbols.getTypeElement(fmlPackage + ".fml.relauncher.Side");
+
+        this.voidType = symbols.getVoidType();
+        this.stringType = symbols.getTypeElement("java.lang.String");
+        this.booleanType = symbols.getPrimitiveType(TypeKind.BOOLEAN);
+
+        // stripped down FML jars may not have them
+        if (instanceType != null) {
+            this.instanceValue = processingUtils.getMember(instanceType, "value", String.class);
+        }
+        if (sidedProxyType != null) {
+            this.sidedProxyClient = processingUtils.getMember(sidedProxyType, "clientSide", String.class);
+            this.sidedProxyServer = processingUtils.getMember(sidedProxyType, "serverSide", String.class);
+        }
+    }
+
+    /**
+     * Checks the elements of one of this version's annotations.
+     *
+     * @param annotation The annotation
+     * @param elements The elements annotated with it
+     * @param index The annotation index for the round
+     */
+    void check(TypeElement annotation, Set<? extends Element> elements, AnnotationIndex index) {
+        String name = annotation.getSimpleName().toString();
+        metrics.begin("check" + name);
+        for (Element element : elements) {
+            switch (name) {
+            case MOD:
+                checkMod((TypeElement) element);
+                break;
+            case EVENT_HANDLER:
+                checkEventHandler((ExecutableElement) element);
+                break;
+            case INSTANCE:
+                checkInstance((VariableElement) element);
+                break;
+            case METADATA:
+                checkMetadata((VariableElement) element);
+                break;
+            case INSTANCE_FACTORY:
+                checkInstanceFactory((ExecutableElement) element, index);
+                break;
+            case SIDED_PROXY:
+                checkSidedProxy((VariableElement) element);
+                break;
+            case SUBSCRIBE_EVENT:
+                checkSubscribeEvent((ExecutableElement) element);
+                break;
+            case CANCELABLE:
+                checkCancelable((TypeElement) element);
+                break;
+            case HAS_RESULT:
+                checkHasResult((TypeElement) element);
+                break;
+            case NETWORK_CHECK_HANDLER:
+                checkNetworkCheckHandler((ExecutableElement) element);
+                break;
+            }
+        }
+        metrics.end(elements.size());
+    }
+
+    private void checkMod(TypeElement mod) {
+        // check public
+        processingUtils.ensureModifier(mod, Modifier.PUBLIC, true);
+        // check non-abstract
+        processingUtils.ensureModifier(mod, Modifier.ABSTRACT, false);
+        // check static if nested
+        if (mod.getNestingKind().isNested()) {
+            processingUtils.ensureModifier(mod, Modifier.STATIC, true);
+        }
+        // check for no argument constructor
+        processingUtils.ensureConstructor(mod);
+    }
+
+    private void checkEventHandler(ExecutableElement eventHandler) {
+        // check owner
+        processingUtils.ensureOwnerAnnotation(eventHandler, modType);
+        // check if public
+        processingUtils.ensureModifier(eventHandler, Modifier.PUBLIC, true);
+        // check if static
+        processingUtils.ensureModifier(eventHandler, Modifier.STATIC, false);
+        // check parameters
+        processingUtils.ensureParameters(eventHandler, fmlEventType.asType());
+        // check return
+        processingUtils.ensureReturn(eventHandler, this.voidType);
+    }
+
+    private void checkInstance(VariableElement instance) {
+        processingUtils.ensureOwnerAnnotation(instance, modType);
+        // check public
+        processingUtils.ensureModifier(instance, Modifier.PUBLIC, true);
+        // check static
+        processingUtils.ensureModifier(instance, Modifier.STATIC, true);
+        // check non-final
+        processingUtils.ensureModifier(instance, Modifier.FINAL, false);
+
+        // check type
+        AnnotationMirror instanceAnno = processingUtils.getAnnotation(instance, instanceType);
+        String value = instanceValue.get(instanceAnno);
+        if (value.isEmpty()) {
+            TypeElement type = (TypeElement) instance.getEnclosingElement();
+            processingUtils.ensureAssignable(instance, type);
+            processingUtils.ensureSame(instance, type);
+        }
+    }
+
+    private void checkMetadata(VariableElement element) {
+        // check modifiers
+        processingUtils.ensureModifier(element, Modifier.PUBLIC, true);
+        processingUtils.ensureModifier(element, Modifier.STATIC, false);
+        processingUtils.ensureModifier(element, Modifier.FINAL, false);
+        // check type
+        processingUtils.ensureAssignable(element, this.modMetadataType);
+    }
+
+    private void checkInstanceFactory(ExecutableElement element, AnnotationIndex index) {
+        processingUtils.ensureOwnerAnnotation(element, this.modType);
+        processingUtils.ensureModifier(element, Modifier.PUBLIC, true);
+        processingUtils.ensureModifier(element, Modifier.STATIC, true);
+        processingUtils.ensureParameters(element);
+        processingUtils.ensureReturn(element, element.getEnclosingElement().asType());
+        processingUtils.ensureNumberOfElements(index, element, this.instanceFactoryType, 1, 1);
+    }
+
+    private void checkSidedProxy(VariableElement sidedProxy) {
+        processingUtils.ensureOwnerAnnotation(sidedProxy, modType);
+        // check public
+        processingUtils.ensureModifier(sidedProxy, Modifier.PUBLIC, true);
+        // check static
+        processingUtils.ensureModifier(sidedProxy, Modifier.STATIC, true);
+        // check non-final
+        processingUtils.ensureModifier(sidedProxy, Modifier.FINAL, false);
+
+        AnnotationMirror sidedProxyAnno = processingUtils.getAnnotation(sidedProxy, sidedProxyType);
+        AnnotationValue clientValue = sidedProxyClient.getValue(sidedProxyAnno);
+        AnnotationValue serverValue = sidedProxyServer.getValue(sidedProxyAnno);
+
+        processingUtils.ensureClassExists(sidedProxy, sidedProxyAnno, clientValue);
+        processingUtils.ensureClassExists(sidedProxy, sidedProxyAnno, serverValue);
+
+        String client = clientValue.getValue().toString();
+        String server = serverValue.getValue().toString();
+        if (!client.isEmpty() && !server.isEmpty()) {
+            TypeElement clientType = processingUtils.getTypeElement(client);
+            TypeElement serverType = processingUtils.getTypeElement(server);
+            // check if classes exist
+            if (clientType != null && serverType != null) {
+                // check types
+                processingUtils.ensureAssignable(sidedProxy, clientType);
+                processingUtils.ensureAssignable(sidedProxy, serverType);
+                // check constructors
+                processingUtils.ensureConstructor(clientType, sidedProxyAnno);
+                processingUtils.ensureConstructor(serverType, sidedProxyAnno);
+            }
+        }
+    }
+
+    private void checkSubscribeEvent(ExecutableElement subscribeEvent) {
+        // check public
+        processingUtils.ensureModifier(subscribeEvent, Modifier.PUBLIC, true);
+        // check non-static
+        processingUtils.ensureModifier(subscribeEvent, Modifier.STATIC, false);
+        // check non-final
+        processingUtils.ensureModifier(subscribeEvent, Modifier.FINAL, false);
+        // check parameter an Event
+        processingUtils.ensureParameters(subscribeEvent, this.eventType.asType());
+
+    }
+
+    private void checkCancelable(TypeElement cancelable) {
+        // check extends Event
+        processingUtils.ensureInstanceof(cancelable, eventType);
+    }
+
+    private void checkHasResult(TypeElement hasResult) {
+        // check extends Event
+        processingUtils.ensureInstanceof(hasResult, eventType);
+    }
+
+    private void checkNetworkCheckHandler(ExecutableElement networkCheckHandler) {
+        // check return boolean
+        processingUtils.ensureReturn(networkCheckHandler, booleanType);
+        // check params String and Side
+        processingUtils.ensureParameters(networkCheckHandler, stringType.asType(),
+                sideType.asType());
+        // check public
+        processingUtils.ensureModifier(networkCheckHandler, Modifier.PUBLIC, true);
+    }
+
+}
@@ -0,0 +1,319 @@
+package mnm.mods.kappa.fap;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import mnm.mods.kappa.runtime.FmlIndexReader;
+
+/**
+ * Writes the FML annotations of each top level class to
+ * {@code META-INF/kappa/fml/<class>.txt}, the format read by
+ * {@link FmlIndexReader}. Each file lists the annotation types which were
+ * indexed, so readers know what still has to be scanned for. Each file has its
+ * class as its only originating element, which keeps the processor isolating.
+ *
+ * @author Matthew Messinger
+ */
+final class FmlIndexWriter {
+
+    private final Filer filer;
+    private final Messager messager;
+    private final Elements elements;
+    private final Types types;
+    // The indexed line
+    private final String indexed;
+
+    // The index lines of each top level class this round
+    private final Map<TypeElement, StringBuilder> classes = new LinkedHashMap<>();
+
+    /**
+     * @param filer The filer
+     * @param messager The messager
+     * @param elements The element utils
+     * @param types The type utils
+     * @param annotations The qualified names of the annotations indexed
+     */
+    FmlIndexWriter(Filer filer, Messager messager, Elements elements, Types types, Set<String> annotations) {
+        this.filer = filer;
+        this.messager = messager;
+        this.elements = elements;
+        this.types = types;
+        Set<String> binaryNames = new TreeSet<>();
+        for (String name : annotations) {
+            TypeElement annotation = elements.getTypeElement(name);
+            // not every version of FML has all of them
+            if (annotation != null) {
+                binaryNames.add(elements.getBinaryName(annotation).toString());
+            }
+        }
+        StringBuilder indexed = new StringBuilder(FmlIndexReader.INDEXED);
+        for (String name : binaryNames) {
+            indexed.append(' ').append(name);
+        }
+        this.indexed = indexed.append('\n').toString();
+    }
+
+    /**
+     * Adds the elements annotated with an annotation to the index.
+     *
+     * @param annotation The annotation
+     * @param annotated The elements annotated with it
+     */
+    void addAll(TypeElement annotation, Iterable<? extends Element> annotated) {
+        String annotationName = elements.getBinaryName(annotation).toString();
+        for (Element element : annotated) {
+            AnnotationMirror mirror = getMirror(element, annotation);
+            if (mirror == null) {
+                continue;
+            }
+            TypeElement owner = getOwner(element);
+            StringBuilder lines = getLines(owner);
+            lines.append(FmlIndexReader.ANNOTATION).append(' ').append(annotationName)
+                    .append(' ').append(elements.getBinaryName(owner))
+                    .append(' ').append(getObjectName(element)).append('\n');
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value : mirror
+                    .getElementValues().entrySet()) {
+                StringBuilder token = new StringBuilder();
+                if (encode(value.getValue().getValue(), token)) {
+                    lines.append(FmlIndexReader.VALUE).append(' ').append(value.getKey().getSimpleName())
+                            .append(' ').append(token).append('\n');
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the classes indexed this round.
+     */
+    void write() {
+        for (Map.Entry<TypeElement, StringBuilder> entry : classes.entrySet()) {
+            TypeElement type = entry.getKey();
+            String name = FmlIndexReader.PREFIX + elements.getBinaryName(type) + FmlIndexReader.SUFFIX;
+            try {
+                FileObject file = filer.createResource(StandardLocation.CLASS_OUTPUT, "", name, type);
+                Writer writer = new OutputStreamWriter(file.openOutputStream(), StandardCharsets.UTF_8);
+                try {
+                    writer.write(FmlIndexReader.HEADER);
+                    writer.write('\n');
+                    writer.write(indexed);
+                    writer.write(entry.getValue().toString());
+                } finally {
+                    writer.close();
+                }
+            } catch (IOException e) {
+                messager.printMessage(Kind.ERROR, "Unable to write " + name + ": " + e, type);
+            }
+        }
+        classes.clear();
+    }
+
+    private StringBuilder getLines(TypeElement type) {
+        Element top = type;
+        while (top.getEnclosingElement().getKind() != ElementKind.PACKAGE) {
+            top = top.getEnclosingElement();
+        }
+        StringBuilder lines = classes.get(top);
+        if (lines == null) {
+            lines = new StringBuilder();
+            classes.put((TypeElement) top, lines);
+        }
+        return lines;
+    }
+
+    private AnnotationMirror getMirror(Element element, TypeElement annotation) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (mirror.getAnnotationType().asElement().equals(annotation)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The class an element is in, or the element itself if it is a class.
+     */
+    private static TypeElement getOwner(Element element) {
+        while (!element.getKind().isClass() && !element.getKind().isInterface()) {
+            element = element.getEnclosingElement();
+        }
+        return (TypeElement) element;
+    }
+
+    /**
+     * The name FML gives an annotated element. Classes use their binary name,
+     * fields their name and methods their name and descriptor.
+     */
+    private String getObjectName(Element element) {
+        switch (element.getKind()) {
+        case METHOD:
+        case CONSTRUCTOR:
+            ExecutableElement method = (ExecutableElement) element;
+            StringBuilder name = new StringBuilder(method.getSimpleName()).append('(');
+            for (VariableElement parameter : method.getParameters()) {
+                appendDescriptor(parameter.asType(), name);
+            }
+            name.append(')');
+            appendDescriptor(method.getReturnType(), name);
+            return name.toString();
+        case FIELD:
+        case ENUM_CONSTANT:
+            return element.getSimpleName().toString();
+        default:
+            if (element.getKind().isClass() || element.getKind().isInterface()) {
+                return elements.getBinaryName((TypeElement) element).toString();
+            }
+            return element.getSimpleName().toString();
+        }
+    }
+
+    private void appendDescriptor(TypeMirror type, StringBuilder descriptor) {
+        type = types.erasure(type);
+        switch (type.getKind()) {
+        case BOOLEAN:
+            descriptor.append('Z');
+            break;
+        case BYTE:
+            descriptor.append('B');
+            break;
+        case SHORT:
+            descriptor.append('S');
+            break;
+        case INT:
+            descriptor.append('I');
+            break;
+        case LONG:
+            descriptor.append('J');
+            break;
+        case CHAR:
+            descriptor.append('C');
+            break;
+        case FLOAT:
+            descriptor.append('F');
+            break;
+        case DOUBLE:
+            descriptor.append('D');
+            break;
+        case VOID:
+            descriptor.append('V');
+            break;
+        case ARRAY:
+            descriptor.append('[');
+            appendDescriptor(((ArrayType) type).getComponentType(), descriptor);
+            break;
+        case DECLARED:
+            TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+            descriptor.append('L').append(elements.getBinaryName(element).toString().replace('.', '/'))
+                    .append(';');
+            break;
+        default:
+            // unresolved, use the name as written
+            descriptor.append('L').append(type.toString().replace('.', '/')).append(';');
+        }
+    }
+
+    /**
+     * Escapes the characters which would split a token or line.
+     */
+    private static void escape(String value, StringBuilder token) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '\\':
+                token.append("\\\\");
+                break;
+            case ' ':
+                token.append("\\s");
+                break;
+            case '\t':
+                token.append("\\t");
+                break;
+            case '\n':
+                token.append("\\n");
+                break;
+            case '\r':
+                token.append("\\r");
+                break;
+            default:
+                token.append(c);
+            }
+        }
+    }
+
+    /**
+     * Encodes an annotation value as one token. Nested annotations are left
+     * out, as none of FML's annotations have them.
+     *
+     * @return False if the value was left out
+     */
+    private boolean encode(Object value, StringBuilder token) {
+        if (value instanceof String) {
+            token.append(FmlIndexReader.STRING);
+            escape((String) value, token);
+        } else if (value instanceof Boolean) {
+            token.append('Z').append(value);
+        } else if (value instanceof Byte) {
+            token.append('B').append(value);
+        } else if (value instanceof Short) {
+            token.append('S').append(value);
+        } else if (value instanceof Integer) {
+            token.append('I').append(value);
+        } else if (value instanceof Long) {
+            token.append('J').append(value);
+        } else if (value instanceof Character) {
+            token.append('C').append((int) (Character) value);
+        } else if (value instanceof Float) {
+            token.append('F').append(value);
+        } else if (value instanceof Double) {
+            token.append('D').append(value);
+        } else if (value instanceof TypeMirror) {
+            token.append(FmlIndexReader.CLASS);
+            appendDescriptor((TypeMirror) value, token);
+        } else if (value instanceof VariableElement) {
+            token.append(FmlIndexReader.ENUM);
+            appendDescriptor(((VariableElement) value).asType(), token);
+            token.append(((VariableElement) value).getSimpleName());
+        } else if (value instanceof List) {
+            List<?> values = (List<?>) value;
+            StringBuilder items = new StringBuilder();
+            int count = 0;
+            for (Object item : values) {
+                int length = items.length();
+                items.append(' ');
+                if (encode(((AnnotationValue) item).getValue(), items)) {
+                    count++;
+                } else {
+                    items.setLength(length);
+                }
+            }
+            token.append(FmlIndexReader.ARRAY).append(count).append(items);
+        } else {
+            return false;
+        }
+        return true;
+    }
+}
@@ -1,29 +1,36 @@
 package mnm.mods.kappa.fap;
 
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 
 import javax.annotation.processing.AbstractProcessor;
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.annotation.processing.RoundEnvironment;
-import javax.lang.model.element.AnnotationMirror;
-import javax.lang.model.element.AnnotationValue;
+import javax.annotation.processing.SupportedOptions;
+import javax.annotation.processing.SupportedSourceVersion;
+import javax.lang.model.SourceVersion;
 import javax.lang.model.element.Element;
-import javax.lang.model.element.ExecutableElement;
-import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
-import javax.lang.model.element.VariableElement;
-import javax.lang.model.type.NoType;
-import javax.lang.model.type.PrimitiveType;
-import javax.lang.model.type.TypeKind;
-import javax.lang.model.util.Elements;
+import javax.tools.Diagnostic.Kind;
 
+import mnm.mods.kappa.AnnotationIndex;
+import mnm.mods.kappa.KappaOptions;
+import mnm.mods.kappa.Metrics;
 import mnm.mods.kappa.ProcessingUtils;
+import mnm.mods.kappa.SymbolCache;
 
 /**
  * Annotation processor for dealing with MinecraftForge's many annotations. Not
  * affiliated with Forge. Will cause an error if any of the supported
  * annotations' requirements are not met.<br>
+ * FML for 1.7 ({@code cpw.mods}) and 1.8 ({@code net.minecraftforge}) are
+ * both supported. The classpath is probed once for them, and only the
+ * annotations of the versions found are supported, so javac never calls this
+ * when Forge is absent. A version's types are resolved the first time its
+ * annotations are used, and nothing else is created until then either.
  * <h3>Supported annotations:</h3>
  * <ul>
  * <li><b>@Mod</b>: Checks that the class applied to is public, non-abstract,
@@ -53,246 +60,168 @@ import mnm.mods.kappa.ProcessingUtils;
  *
  * @author Matthew Messinger
  */
-public abstract class ForgeProcessor extends AbstractProcessor {
-
-    private static final String MOD = "Mod";
-    private static final String EVENT_HANDLER = "EventHandler";
-    private static final String INSTANCE = "Instance";
-    private static final String METADATA = "Metadata";
-    private static final String INSTANCE_FACTORY = "InstanceFactory";
-    private static final String SIDED_PROXY = "SidedProxy";
-    private static final String SUBSCRIBE_EVENT = "SubscribeEvent";
-    private static final String CANCELABLE = "Cancelable";
-    private static final String HAS_RESULT = "HasResult";
-    private static final String NETWORK_CHECK_HANDLER = "NetworkCheckHandler";
-
-    private final String fmlPackage;
-
+@SupportedSourceVersion(SourceVersion.RELEASE_7)
+@SupportedOptions({ KappaOptions.STATS, KappaOptions.REPORT, KappaOptions.MAX_PER_RULE,
+        KappaOptions.MAX_PER_UNIT, KappaOptions.METRICS, KappaOptions.FML_INDEX,
+        KappaOptions.EVENT_INVOKERS, KappaOptions.PROXY_FACTORIES })
+public class ForgeProcessor extends AbstractProcessor {
+
+    // The packages FML has been in
+    private static final String[] FML_PACKAGES = { "cpw.mods", "net.minecraftforge" };
+
+    // The annotations relative to fml.common
+    private static final String[] ANNOTATIONS = {
+            "Mod",
+            "Mod.EventHandler",
+            "Mod.Instance",
+            "Mod.Metadata",
+            "Mod.InstanceFactory",
+            "SidedProxy",
+            "eventhandler.Event.HasResult",
+            "eventhandler.SubscribeEvent",
+            "eventhandler.Cancelable",
+            "network.NetworkCheckHandler"
+    };
+
+    // The annotations sources are generated for, relative to fml
+    private static final String SUBSCRIBE_EVENT = ".common.eventhandler.SubscribeEvent";
+    private static final String SIDED_PROXY = ".common.SidedProxy";
+
+    // Null until an FML annotation is found
     private ProcessingUtils processingUtils;
-
-    // object types
-    private TypeElement modType;
-    private TypeElement instanceType;
-    private TypeElement sidedProxyType;
-    private TypeElement instanceFactoryType;
-
-    private TypeElement fmlEventType;
-    private TypeElement eventType;
-    private TypeElement modMetadataType;
-    private TypeElement sideType;
-    private TypeElement stringType;
-
-    // other types
-    private NoType voidType;
-    private PrimitiveType booleanType;
-
-    /**
-     * Sets the package that FML is located in. {@code cpw.mods} for 1.7,
-     * {@code net.minecraftforge} for 1.8.
-     *
-     * @param fmlPackage The package FML is located in.
-     */
-    protected ForgeProcessor(String fmlPackage) {
-        this.fmlPackage = fmlPackage;
-    }
+    private Metrics metrics;
+    // Only used when the annotation index is written.
+    private FmlIndexWriter fmlIndex;
+    // Only used when event invokers are generated.
+    private EventInvokerWriter eventInvokers;
+    // Only used when proxy factories are generated.
+    private ProxyFactoryWriter proxyFactories;
+
+    // The FML packages on the classpath and their checks once they are used
+    private Map<String, FmlChecks> versions = new LinkedHashMap<>();
+    private Set<String> supportedTypes = Collections.emptySet();
 
     @Override
     public synchronized void init(ProcessingEnvironment processingEnv) {
         super.init(processingEnv);
 
-        Elements elementUtils = processingEnv.getElementUtils();
-        this.processingUtils = new ProcessingUtils(processingEnv);
-
-        final String common = fmlPackage + ".fml.common";
-        this.modType = elementUtils.getTypeElement(common + ".Mod");
-        this.instanceType = elementUtils.getTypeElement(common + ".Mod.Instance");
-        this.sidedProxyType = elementUtils.getTypeElement(common + ".SidedProxy");
-        this.instanceFactoryType = elementUtils.getTypeElement(common + ".Mod.InstanceFactoryType");
-
-        this.modMetadataType = elementUtils.getTypeElement(common + ".ModMetadata");
-        this.fmlEventType = elementUtils.getTypeElement(common + ".event.FMLEvent");
-        this.eventType = elementUtils.getTypeElement(common + ".eventhandler.Event");
-        this.sideType = elementUtils.getTypeElement(fmlPackage + ".fml.relauncher.Side");
+        SymbolCache symbols = SymbolCache.get(processingEnv);
+        for (String fmlPackage : FML_PACKAGES) {
+            if (symbols.getTypeElement(fmlPackage + ".fml.common.Mod") != null) {
+                versions.put(fmlPackage, null);
+            }
+        }
+        if (versions.isEmpty()) {
+            // Forge isn't here, nothing is supported
+            return;
+        }
+        if (versions.size() > 1) {
+            processingEnv.getMessager().printMessage(Kind.WARNING, "FML was found in both "
+                    + versions.keySet() + ". Only one version of Forge should be on the classpath."
+                    + " Annotations from each will be checked against their own version.");
+        }
+        Set<String> types = new HashSet<>();
+        for (String fmlPackage : versions.keySet()) {
+            for (String annotation : ANNOTATIONS) {
+                types.add(fmlPackage + ".fml.common." + annotation);
+            }
+        }
+        this.supportedTypes = Collections.unmodifiableSet(types);
+    }
 
-        this.voidType = processingEnv.getTypeUtils().getNoType(TypeKind.VOID);
-        this.stringType = elementUtils.getTypeElement("java.lang.String");
-        this.booleanType = processingEnv.getTypeUtils().getPrimitiveType(TypeKind.BOOLEAN);
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return supportedTypes;
     }
 
     @Override
     public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
-        // Iterate through registered annotations
+        if (processingUtils == null) {
+            // javac only calls this once a supported annotation is found
+            this.metrics = Metrics.create(processingEnv, getClass().getSimpleName());
+            this.processingUtils = new ProcessingUtils(processingEnv, metrics);
+            if (KappaOptions.isEnabled(processingEnv, KappaOptions.FML_INDEX)) {
+                this.fmlIndex = new FmlIndexWriter(processingEnv.getFiler(), processingEnv.getMessager(),
+                        processingEnv.getElementUtils(), processingEnv.getTypeUtils(), supportedTypes);
+            }
+            if (KappaOptions.isEnabled(processingEnv, KappaOptions.EVENT_INVOKERS)) {
+                this.eventInvokers = new EventInvokerWriter(processingEnv.getFiler(),
+                        processingEnv.getMessager(), processingEnv.getElementUtils(),
+                        processingEnv.getTypeUtils(), processingUtils.getSymbols());
+            }
+            if (KappaOptions.isEnabled(processingEnv, KappaOptions.PROXY_FACTORIES)) {
+                this.proxyFactories = new ProxyFactoryWriter(processingEnv.getFiler(),
+                        processingEnv.getMessager(), processingEnv.getElementUtils(),
+                        processingEnv.getTypeUtils(), processingUtils.getSymbols());
+            }
+        }
+        processingUtils.newRound();
+        // Index the round first so cardinality rules don't rescan classes
+        Map<TypeElement, Set<? extends Element>> round = new LinkedHashMap<>();
+        AnnotationIndex index = new AnnotationIndex();
         for (TypeElement annotation : annotations) {
-            process(annotation, roundEnv.getElementsAnnotatedWith(annotation));
+            Set<? extends Element> elements = roundEnv.getElementsAnnotatedWith(annotation);
+            index.addAll(annotation, elements);
+            round.put(annotation, elements);
         }
-        return true;
-    }
-
-    private void process(TypeElement annotation, Set<? extends Element> elements) {
-        for (Element element : elements) {
-            switch (annotation.getSimpleName().toString()) {
-            case MOD:
-                checkMod((TypeElement) element);
-                break;
-            case EVENT_HANDLER:
-                checkEventHandler((ExecutableElement) element);
-                break;
-            case INSTANCE:
-                checkInstance((VariableElement) element);
-                break;
-            case METADATA:
-                checkMetadata((VariableElement) element);
-                break;
-            case INSTANCE_FACTORY:
-                checkInstanceFactory((ExecutableElement) element);
-                break;
-            case SIDED_PROXY:
-                checkSidedProxy((VariableElement) element);
-                break;
-            case SUBSCRIBE_EVENT:
-                checkSubscribeEvent((ExecutableElement) element);
-                break;
-            case CANCELABLE:
-                checkCancelable((TypeElement) element);
-                break;
-            case HAS_RESULT:
-                checkHasResult((TypeElement) element);
-                break;
-            case NETWORK_CHECK_HANDLER:
-                checkNetworkCheckHandler((ExecutableElement) element);
-                break;
+        // Iterate through registered annotations
+        for (Map.Entry<TypeElement, Set<? extends Element>> entry : round.entrySet()) {
+            getChecks(entry.getKey()).check(entry.getKey(), entry.getValue(), index);
+        }
+        if (fmlIndex != null) {
+            metrics.begin("writeIndex");
+            for (Map.Entry<TypeElement, Set<? extends Element>> entry : round.entrySet()) {
+                fmlIndex.addAll(entry.getKey(), entry.getValue());
             }
+            fmlIndex.write();
+            metrics.end();
         }
-    }
-
-    private void checkMod(TypeElement mod) {
-        // check public
-        processingUtils.ensureModifier(mod, Modifier.PUBLIC, true);
-        // check non-abstract
-        processingUtils.ensureModifier(mod, Modifier.ABSTRACT, false);
-        // check static if nested
-        if (mod.getNestingKind().isNested()) {
-            processingUtils.ensureModifier(mod, Modifier.STATIC, true);
+        if (eventInvokers != null) {
+            metrics.begin("writeInvokers");
+            for (Map.Entry<TypeElement, Set<? extends Element>> entry : round.entrySet()) {
+                if (entry.getKey().getQualifiedName().toString().endsWith(SUBSCRIBE_EVENT)) {
+                    eventInvokers.addAll(entry.getValue());
+                    eventInvokers.write(entry.getKey());
+                }
+            }
+            metrics.end();
         }
-        // check for no argument constructor
-        processingUtils.ensureConstructor(mod);
-    }
-
-    private void checkEventHandler(ExecutableElement eventHandler) {
-        // check owner
-        processingUtils.ensureOwnerAnnotation(eventHandler, modType);
-        // check if public
-        processingUtils.ensureModifier(eventHandler, Modifier.PUBLIC, true);
-        // check if static
-        processingUtils.ensureModifier(eventHandler, Modifier.STATIC, false);
-        // check parameters
-        processingUtils.ensureParameters(eventHandler, fmlEventType.asType());
-        // check return
-        processingUtils.ensureReturn(eventHandler, this.voidType);
-    }
-
-    private void checkInstance(VariableElement instance) {
-        processingUtils.ensureOwnerAnnotation(instance, modType);
-        // check public
-        processingUtils.ensureModifier(instance, Modifier.PUBLIC, true);
-        // check static
-        processingUtils.ensureModifier(instance, Modifier.STATIC, true);
-        // check non-final
-        processingUtils.ensureModifier(instance, Modifier.FINAL, false);
-
-        // check type
-        AnnotationMirror instanceAnno = processingUtils.getAnnotation(instance,
-                instanceType.asType());
-        Map<String, AnnotationValue> values = processingUtils.getAnnotationValues(instanceAnno);
-        String value = values.get("value").getValue().toString();
-        if (value.isEmpty()) {
-            TypeElement type = (TypeElement) instance.getEnclosingElement();
-            processingUtils.ensureAssignable(instance, type);
-            processingUtils.ensureSame(instance, type);
+        if (proxyFactories != null) {
+            metrics.begin("writeProxyFactories");
+            for (Map.Entry<TypeElement, Set<? extends Element>> entry : round.entrySet()) {
+                if (entry.getKey().getQualifiedName().toString().endsWith(SIDED_PROXY)) {
+                    proxyFactories.addAll(entry.getValue());
+                    proxyFactories.write(entry.getKey());
+                }
+            }
+            metrics.end();
         }
-    }
-
-    private void checkMetadata(VariableElement element) {
-        // check modifiers
-        processingUtils.ensureModifier(element, Modifier.PUBLIC, true);
-        processingUtils.ensureModifier(element, Modifier.STATIC, false);
-        processingUtils.ensureModifier(element, Modifier.FINAL, false);
-        // check type
-        processingUtils.ensureAssignable(element, this.modMetadataType);
-    }
-
-    private void checkInstanceFactory(ExecutableElement element) {
-        processingUtils.ensureOwnerAnnotation(element, this.modType);
-        processingUtils.ensureModifier(element, Modifier.PUBLIC, true);
-        processingUtils.ensureModifier(element, Modifier.STATIC, true);
-        processingUtils.ensureParameters(element);
-        processingUtils.ensureReturn(element, element.getEnclosingElement().asType());
-        processingUtils.ensureNumberOfElements(element, this.instanceFactoryType, 1, 1);
-    }
-
-    private void checkSidedProxy(VariableElement sidedProxy) {
-        processingUtils.ensureOwnerAnnotation(sidedProxy, modType);
-        // check public
-        processingUtils.ensureModifier(sidedProxy, Modifier.PUBLIC, true);
-        // check static
-        processingUtils.ensureModifier(sidedProxy, Modifier.STATIC, true);
-        // check non-final
-        processingUtils.ensureModifier(sidedProxy, Modifier.FINAL, false);
-
-        AnnotationMirror sidedProxyAnno = processingUtils.getAnnotation(sidedProxy,
-                sidedProxyType.asType());
-        Map<String, AnnotationValue> values = processingUtils.getAnnotationValues(sidedProxyAnno);
-
-        processingUtils.ensureClassExists(sidedProxy, sidedProxyAnno, values.get("clientSide"));
-        processingUtils.ensureClassExists(sidedProxy, sidedProxyAnno, values.get("serverSide"));
-
-        String client = values.get("clientSide").getValue().toString();
-        String server = values.get("serverSide").getValue().toString();
-        if (!client.isEmpty() && !server.isEmpty()) {
-            TypeElement clientType = this.processingEnv.getElementUtils().getTypeElement(client);
-            TypeElement serverType = this.processingEnv.getElementUtils().getTypeElement(server);
-            // check if classes exist
-            if (clientType != null && serverType != null) {
-                // check types
-                processingUtils.ensureAssignable(sidedProxy, clientType);
-                processingUtils.ensureAssignable(sidedProxy, serverType);
-                // check constructors
-                processingUtils.ensureConstructor(clientType, sidedProxyAnno);
-                processingUtils.ensureConstructor(serverType, sidedProxyAnno);
+        metrics.endRound();
+        // last, so the final round is counted and capped
+        if (roundEnv.processingOver()) {
+            processingUtils.getDiagnostics().finish(getClass().getSimpleName());
+            if (KappaOptions.isEnabled(processingEnv, KappaOptions.STATS)) {
+                processingUtils.printStatistics(getClass().getSimpleName());
             }
+            metrics.finish();
         }
+        return true;
     }
 
-    private void checkSubscribeEvent(ExecutableElement subscribeEvent) {
-        // check public
-        processingUtils.ensureModifier(subscribeEvent, Modifier.PUBLIC, true);
-        // check non-static
-        processingUtils.ensureModifier(subscribeEvent, Modifier.STATIC, false);
-        // check non-final
-        processingUtils.ensureModifier(subscribeEvent, Modifier.FINAL, false);
-        // check parameter an Event
-        processingUtils.ensureParameters(subscribeEvent, this.eventType.asType());
-
-    }
-
-    private void checkCancelable(TypeElement cancelable) {
-        // check extends Event
-        processingUtils.ensureInstanceof(cancelable, eventType);
-    }
-
-    private void checkHasResult(TypeElement hasResult) {
-        // check extends Event
-        processingUtils.ensureInstanceof(hasResult, eventType);
-    }
-
-    private void checkNetworkCheckHandler(ExecutableElement networkCheckHandler) {
-        // check return boolean
-        processingUtils.ensureReturn(networkCheckHandler, booleanType);
-        // check params String and Side
-        processingUtils.ensureParameters(networkCheckHandler, stringType.asType(),
-                sideType.asType());
-        // check public
-        processingUtils.ensureModifier(networkCheckHandler, Modifier.PUBLIC, true);
+    private FmlChecks getChecks(TypeElement annotation) {
+        String name = annotation.getQualifiedName().toString();
+        for (Map.Entry<String, FmlChecks> version : versions.entrySet()) {
+            if (name.startsWith(version.getKey() + ".")) {
+                FmlChecks checks = version.getValue();
+                if (checks == null) {
+                    checks = new FmlChecks(processingUtils, metrics, version.getKey());
+                    version.setValue(checks);
+                }
+                return checks;
+            }
+        }
+        // only supported annotations are passed in
+        throw new IllegalArgumentException(name);
     }
 
 }
@@ -0,0 +1,130 @@
+package mnm.mods.kappa.fap;
+
+import java.util.Set;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+
+/**
+ * Helpers for the sources generated next to a user's class.
+ *
+ * @author Matthew Messinger
+ */
+final class GeneratedSources {
+
+    private GeneratedSources() {
+    }
+
+    /**
+     * Names a class generated for an owner. It goes in the owner's package,
+     * and nested owners are joined with underscores, e.g.
+     * {@code Outer_Inner<suffix>}.
+     *
+     * @param elements The element utils
+     * @param owner The owner
+     * @param suffix The suffix
+     * @return The qualified name
+     */
+    static String getName(Elements elements, TypeElement owner, String suffix) {
+        StringBuilder name = new StringBuilder(owner.getSimpleName());
+        for (Element element = owner.getEnclosingElement(); element.getKind() != ElementKind.PACKAGE; element = element
+                .getEnclosingElement()) {
+            name.insert(0, element.getSimpleName() + "_");
+        }
+        PackageElement pkg = elements.getPackageOf(owner);
+        if (!pkg.isUnnamed()) {
+            name.insert(0, pkg.getQualifiedName() + ".");
+        }
+        return name.append(suffix).toString();
+    }
+
+    /**
+     * @param element The element
+     * @return The top level class an element is in
+     */
+    static Element getTopLevel(Element element) {
+        while (element.getEnclosingElement().getKind() != ElementKind.PACKAGE) {
+            element = element.getEnclosingElement();
+        }
+        return element;
+    }
+
+    /**
+     * Gets a type as written in source, with wildcards for its type
+     * parameters.
+     *
+     * @param type The type
+     * @return The type's name
+     */
+    static String getTypeName(TypeElement type) {
+        StringBuilder name = new StringBuilder(type.getQualifiedName());
+        int params = type.getTypeParameters().size();
+        if (params > 0) {
+            name.append('<');
+            for (int i = 0; i < params; i++) {
+                name.append(i == 0 ? "?" : ", ?");
+            }
+            name.append('>');
+        }
+        return name.toString();
+    }
+
+    /**
+     * Tests if a class and every class it is in can be named from the package
+     * of another.
+     *
+     * @param elements The element utils
+     * @param type The class
+     * @param from The class naming it
+     * @return True if it can be named
+     */
+    static boolean isAccessible(Elements elements, TypeElement type, TypeElement from) {
+        boolean samePackage = elements.getPackageOf(type).equals(elements.getPackageOf(from));
+        Element element = type;
+        while (element.getKind() != ElementKind.PACKAGE) {
+            if (!element.getKind().isClass() && !element.getKind().isInterface()) {
+                // local classes have no name outside their method
+                return false;
+            }
+            Set<Modifier> modifiers = element.getModifiers();
+            if (modifiers.contains(Modifier.PRIVATE) || !samePackage && !modifiers.contains(Modifier.PUBLIC)) {
+                return false;
+            }
+            element = element.getEnclosingElement();
+        }
+        return true;
+    }
+
+    /**
+     * Tests if a class can be created with {@code new} and no arguments from
+     * the package of another. Abstract and inner classes can't be.
+     *
+     * @param elements The element utils
+     * @param type The class
+     * @param from The class creating it
+     * @return True if it can be created
+     */
+    static boolean isConstructible(Elements elements, TypeElement type, TypeElement from) {
+        Set<Modifier> modifiers = type.getModifiers();
+        if (type.getKind() != ElementKind.CLASS || modifiers.contains(Modifier.ABSTRACT)
+                || type.getNestingKind().isNested() && !modifiers.contains(Modifier.STATIC)
+                || !isAccessible(elements, type, from)) {
+            return false;
+        }
+        boolean samePackage = elements.getPackageOf(type).equals(elements.getPackageOf(from));
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            Set<Modifier> access = constructor.getModifiers();
+            if (constructor.getParameters().isEmpty() && !access.contains(Modifier.PRIVATE)
+                    && (samePackage || access.contains(Modifier.PUBLIC))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
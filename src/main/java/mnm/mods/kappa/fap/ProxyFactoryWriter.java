@@ -0,0 +1,262 @@
+package mnm.mods.kappa.fap;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.JavaFileObject;
+
+import mnm.mods.kappa.SymbolCache;
+
+/**
+ * Generates a proxy factory for each mod with {@code @SidedProxy} fields. Each
+ * field gets a {@code create<Field>(Side)} method, which creates the side's
+ * proxy with {@code new}, and {@code install(Side)} sets every field the way
+ * FML would. The proxies are created in nested {@code Client} and
+ * {@code Server} classes, so the other side's proxy classes are never loaded.
+ * The factory is named after the mod, e.g. {@code MyMod_Proxies}, and has the
+ * mod's top level class as its only originating element.
+ * <p>
+ * A mod is skipped with a warning if one of its proxies can't be created from
+ * generated code.
+ *
+ * @author Matthew Messinger
+ */
+final class ProxyFactoryWriter {
+
+    private static final String SUFFIX = "_Proxies";
+
+    private final Filer filer;
+    private final Messager messager;
+    private final Elements elements;
+    private final Types types;
+    private final SymbolCache symbols;
+
+    // The proxy fields of each owner this round
+    private final Map<TypeElement, List<VariableElement>> owners = new LinkedHashMap<>();
+    // The classes already generated
+    private final Set<String> generated = new HashSet<>();
+
+    ProxyFactoryWriter(Filer filer, Messager messager, Elements elements, Types types, SymbolCache symbols) {
+        this.filer = filer;
+        this.messager = messager;
+        this.elements = elements;
+        this.types = types;
+        this.symbols = symbols;
+    }
+
+    /**
+     * Adds the fields annotated with {@code @SidedProxy}.
+     *
+     * @param annotated The annotated elements
+     */
+    void addAll(Iterable<? extends Element> annotated) {
+        for (Element element : annotated) {
+            if (element.getKind() != ElementKind.FIELD) {
+                continue;
+            }
+            TypeElement owner = (TypeElement) element.getEnclosingElement();
+            List<VariableElement> fields = owners.get(owner);
+            if (fields == null) {
+                fields = new ArrayList<>();
+                owners.put(owner, fields);
+            }
+            fields.add((VariableElement) element);
+        }
+    }
+
+    /**
+     * Writes the factories of the owners added this round.
+     *
+     * @param annotation The {@code @SidedProxy} annotation type
+     */
+    void write(TypeElement annotation) {
+        // <fml>.common.SidedProxy -> <fml>.relauncher.Side
+        String common = elements.getPackageOf(annotation).getQualifiedName().toString();
+        String side = common.substring(0, common.lastIndexOf('.')) + ".relauncher.Side";
+        for (Map.Entry<TypeElement, List<VariableElement>> entry : owners.entrySet()) {
+            TypeElement owner = entry.getKey();
+            String name = GeneratedSources.getName(elements, owner, SUFFIX);
+            if (!generated.add(name)) {
+                continue;
+            }
+            List<Proxy> proxies = new ArrayList<>();
+            String reason = getProxies(owner, entry.getValue(), annotation, proxies);
+            if (reason != null) {
+                messager.printMessage(Kind.WARNING, "Proxy factory for " + owner.getSimpleName()
+                        + " was not generated because " + reason + ".", owner);
+                continue;
+            }
+            try {
+                JavaFileObject file = filer.createSourceFile(name, GeneratedSources.getTopLevel(owner));
+                Writer writer = file.openWriter();
+                try {
+                    writeFactory(writer, side, owner, name, proxies);
+                } finally {
+                    writer.close();
+                }
+            } catch (IOException e) {
+                messager.printMessage(Kind.ERROR, "Unable to write " + name + ": " + e, owner);
+            }
+        }
+        owners.clear();
+    }
+
+    private void writeFactory(Writer writer, String side, TypeElement owner, String name, List<Proxy> proxies)
+            throws IOException {
+        PackageElement pkg = elements.getPackageOf(owner);
+        String simpleName = name.substring(name.lastIndexOf('.') + 1);
+        if (!pkg.isUnnamed()) {
+            writer.write("package " + pkg.getQualifiedName() + ";\n\n");
+        }
+        writer.write("import " + side + ";\n");
+        writer.write("\n");
+        writer.write("/**\n");
+        writer.write(" * Creates the sided proxies of {@link " + owner.getQualifiedName() + "}.\n");
+        writer.write(" * Generated by Kappa.\n");
+        writer.write(" */\n");
+        writer.write("public final class " + simpleName + " {\n\n");
+        writer.write("    private " + simpleName + "() {\n");
+        writer.write("    }\n\n");
+
+        writer.write("    /**\n");
+        writer.write("     * Sets every sided proxy of the mod to a new proxy for a side.\n");
+        writer.write("     *\n");
+        writer.write("     * @param side The side\n");
+        writer.write("     */\n");
+        writer.write("    public static void install(Side side) {\n");
+        for (Proxy proxy : proxies) {
+            writer.write("        " + owner.getQualifiedName() + "." + proxy.field.getSimpleName() + " = "
+                    + proxy.factory + "(side);\n");
+        }
+        writer.write("    }\n");
+
+        for (Proxy proxy : proxies) {
+            writer.write("\n");
+            writer.write("    /**\n");
+            writer.write("     * Creates the proxy for {@link " + owner.getQualifiedName() + "#"
+                    + proxy.field.getSimpleName() + "}.\n");
+            writer.write("     *\n");
+            writer.write("     * @param side The side\n");
+            writer.write("     * @return A new proxy for the side\n");
+            writer.write("     */\n");
+            writer.write("    public static " + proxy.type + " " + proxy.factory + "(Side side) {\n");
+            writer.write("        return side.isClient() ? Client." + proxy.factory + "() : Server." + proxy.factory
+                    + "();\n");
+            writer.write("    }\n");
+        }
+
+        writeSide(writer, "Client", proxies, true);
+        writeSide(writer, "Server", proxies, false);
+        writer.write("}\n");
+    }
+
+    private static void writeSide(Writer writer, String name, List<Proxy> proxies, boolean client)
+            throws IOException {
+        writer.write("\n");
+        writer.write("    // Only loaded on the " + name.toLowerCase() + "\n");
+        writer.write("    private static final class " + name + " {\n");
+        for (Proxy proxy : proxies) {
+            writer.write("\n");
+            writer.write("        static " + proxy.type + " " + proxy.factory + "() {\n");
+            writer.write("            return new " + (client ? proxy.client : proxy.server) + "();\n");
+            writer.write("        }\n");
+        }
+        writer.write("    }\n");
+    }
+
+    /**
+     * Resolves the proxies of an owner's fields.
+     *
+     * @return Why they can't be generated, or null if they can
+     */
+    private String getProxies(TypeElement owner, List<VariableElement> fields, TypeElement annotation,
+            List<Proxy> proxies) {
+        if (!GeneratedSources.isAccessible(elements, owner, owner)) {
+            return "it is private";
+        }
+        Set<String> factories = new HashSet<>();
+        for (VariableElement field : fields) {
+            Set<Modifier> modifiers = field.getModifiers();
+            if (modifiers.contains(Modifier.PRIVATE) || !modifiers.contains(Modifier.STATIC)
+                    || modifiers.contains(Modifier.FINAL)) {
+                return field.getSimpleName() + " is not a valid proxy field";
+            }
+            TypeMirror type = types.erasure(field.asType());
+            TypeElement client = getProxyType(field, annotation, "clientSide");
+            TypeElement server = getProxyType(field, annotation, "serverSide");
+            for (TypeElement proxy : new TypeElement[] { client, server }) {
+                if (proxy == null || !GeneratedSources.isConstructible(elements, proxy, owner)
+                        || !types.isAssignable(types.erasure(proxy.asType()), type)) {
+                    return "a proxy of " + field.getSimpleName() + " can't be created with new";
+                }
+            }
+            String fieldName = field.getSimpleName().toString();
+            String base = "create" + Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+            String factory = base;
+            for (int i = 2; !factories.add(factory); i++) {
+                factory = base + i;
+            }
+            proxies.add(new Proxy(field, type.toString(), factory, client.getQualifiedName().toString(),
+                    server.getQualifiedName().toString()));
+        }
+        return null;
+    }
+
+    private TypeElement getProxyType(VariableElement field, TypeElement annotation, String member) {
+        for (AnnotationMirror mirror : field.getAnnotationMirrors()) {
+            if (!mirror.getAnnotationType().asElement().equals(annotation)) {
+                continue;
+            }
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value : mirror
+                    .getElementValues().entrySet()) {
+                if (value.getKey().getSimpleName().contentEquals(member)) {
+                    String name = value.getValue().getValue().toString();
+                    if (name.isEmpty()) {
+                        return null;
+                    }
+                    // binary names of nested classes are accepted by FML too
+                    TypeElement type = symbols.getTypeElement(name);
+                    return type != null ? type : symbols.getTypeElement(name.replace('$', '.'));
+                }
+            }
+        }
+        return null;
+    }
+
+    private static class Proxy {
+        private final VariableElement field;
+        private final String type;
+        private final String factory;
+        private final String client;
+        private final String server;
+
+        private Proxy(VariableElement field, String type, String factory, String client, String server) {
+            this.field = field;
+            this.type = type;
+            this.factory = factory;
+            this.client = client;
+            this.server = server;
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package mnm.mods.kappa.runtime;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Reads the FML annotation index Kappa writes with {@code -Akappa.fmlIndex}.
+ * It lists the uses of the FML annotations Kappa supports the same way FML
+ * finds them by scanning every class in a mod jar with ASM.
+ * <p>
+ * The index only covers the annotation types listed in it, and only the
+ * classes compiled with Kappa. A loader hook may take those annotations from
+ * it instead of scanning, but only for jars it knows were compiled entirely
+ * with Kappa, since a class without FML annotations has no index file either.
+ * Every other annotation, like {@code @ObjectHolder}, {@code @Optional} or
+ * another mod's, still has to be found by scanning.
+ * <p>
+ * There is one file for each top level class, at
+ * {@code META-INF/kappa/fml/<class>.txt}. After a header line comes a line of
+ * {@code indexed <annotation>...} with the annotation types indexed, then each
+ * annotation is a line of {@code annotation <annotation> <class> <object>}, followed by a
+ * {@code value <name> <value>} line for each value set on it. Names are binary
+ * names, and the object is named the way FML names it: classes by their name,
+ * fields by their name and methods by their name and descriptor. Values are
+ * one token each:
+ * <ul>
+ * <li>{@code s<string>} with {@code \\}, {@code \s}, {@code \t}, {@code \n}
+ * and {@code \r} escaped</li>
+ * <li>a primitive descriptor followed by its value, chars as numbers</li>
+ * <li>{@code c<descriptor>} for a class</li>
+ * <li>{@code e<descriptor><constant>} for an enum constant</li>
+ * <li>{@code [<count>} followed by that many values for an array</li>
+ * </ul>
+ * Values are passed to the visitor as strings, boxed primitives,
+ * {@link ClassValue}s, {@link EnumValue}s and lists. This class has no
+ * dependencies, so it can be used from the game.
+ *
+ * @author Matthew Messinger
+ */
+public final class FmlIndexReader {
+
+    /** The directory the index files are in */
+    public static final String PREFIX = "META-INF/kappa/fml/";
+    /** The extension of each index file */
+    public static final String SUFFIX = ".txt";
+    /** The first line of each index file */
+    public static final String HEADER = "kappa-fml 2";
+
+    /** Starts the line of indexed annotation types */
+    public static final String INDEXED = "indexed";
+
+    /** Starts an annotation line */
+    public static final String ANNOTATION = "annotation";
+    /** Starts a value line */
+    public static final String VALUE = "value";
+
+    /** Starts a string value */
+    public static final char STRING = 's';
+    /** Starts a class value */
+    public static final char CLASS = 'c';
+    /** Starts an enum value */
+    public static final char ENUM = 'e';
+    /** Starts an array value */
+    public static final char ARRAY = '[';
+
+    private FmlIndexReader() {
+    }
+
+    /**
+     * Receives the annotations in an index.
+     */
+    public interface Visitor {
+
+        /**
+         * Visits an annotation.
+         *
+         * @param annotation The binary name of the annotation type
+         * @param className The binary name of the class it is in
+         * @param objectName The name of the annotated class, field or method
+         * @param values The values set on it by name
+         */
+        void visitAnnotation(String annotation, String className, String objectName,
+                Map<String, Object> values);
+    }
+
+    /**
+     * Reads every index file in a jar.
+     *
+     * @param jar The jar
+     * @param visitor The visitor
+     * @return The annotation types indexed by every file, as binary names.
+     *         Empty if the jar has no index. Any other annotation needs to be
+     *         scanned for.
+     * @throws IOException If the jar can't be read or an index is invalid
+     */
+    public static Set<String> read(ZipFile jar, Visitor visitor) throws IOException {
+        Set<String> indexed = null;
+        Enumeration<? extends ZipEntry> entries = jar.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            if (!entry.isDirectory() && entry.getName().startsWith(PREFIX)
+                    && entry.getName().endsWith(SUFFIX)) {
+                InputStream in = jar.getInputStream(entry);
+                try {
+                    Set<String> types = read(in, visitor);
+                    if (indexed == null) {
+                        indexed = new HashSet<>(types);
+                    } else {
+                        // files from another compile may index less
+                        indexed.retainAll(types);
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+        }
+        return indexed == null ? Collections.<String> emptySet() : Collections.unmodifiableSet(indexed);
+    }
+
+    /**
+     * Reads one index file.
+     *
+     * @param in The file's content. It is not closed.
+     * @param visitor The visitor
+     * @return The annotation types it indexes, as binary names
+     * @throws IOException If it can't be read or is invalid
+     */
+    public static Set<String> read(InputStream in, Visitor visitor) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line = reader.readLine();
+        if (!HEADER.equals(line)) {
+            throw new IOException("Not a Kappa FML index: " + line);
+        }
+        line = reader.readLine();
+        if (line == null || !line.startsWith(INDEXED + " ")) {
+            throw new IOException("Missing indexed annotations: " + line);
+        }
+        Set<String> indexed = new LinkedHashSet<>();
+        for (String type : line.substring(INDEXED.length() + 1).split(" ")) {
+            if (!type.isEmpty()) {
+                indexed.add(type);
+            }
+        }
+        String[] annotation = null;
+        Map<String, Object> values = null;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] tokens = line.split(" ");
+            if (tokens[0].equals(ANNOTATION) && tokens.length == 4) {
+                if (annotation != null) {
+                    visit(visitor, annotation, values);
+                }
+                annotation = tokens;
+                values = new LinkedHashMap<>();
+            } else if (tokens[0].equals(VALUE) && tokens.length >= 3 && annotation != null) {
+                int[] index = { 2 };
+                values.put(tokens[1], decode(tokens, index));
+                if (index[0] != tokens.length) {
+                    throw new IOException("Invalid value: " + line);
+                }
+            } else {
+                throw new IOException("Invalid line: " + line);
+            }
+        }
+        if (annotation != null) {
+            visit(visitor, annotation, values);
+        }
+        return Collections.unmodifiableSet(indexed);
+    }
+
+    private static void visit(Visitor visitor, String[] annotation, Map<String, Object> values) {
+        visitor.visitAnnotation(annotation[1], annotation[2], annotation[3],
+                Collections.unmodifiableMap(values));
+    }
+
+    private static Object decode(String[] tokens, int[] index) throws IOException {
+        if (index[0] >= tokens.length || tokens[index[0]].isEmpty()) {
+            throw new IOException("Missing value");
+        }
+        String token = tokens[index[0]++];
+        String value = token.substring(1);
+        try {
+            switch (token.charAt(0)) {
+            case STRING:
+                return unescape(value);
+            case 'Z':
+                return Boolean.valueOf(value);
+            case 'B':
+                return Byte.valueOf(value);
+            case 'S':
+                return Short.valueOf(value);
+            case 'I':
+                return Integer.valueOf(value);
+            case 'J':
+                return Long.valueOf(value);
+            case 'C':
+                return Character.valueOf((char) Integer.parseInt(value));
+            case 'F':
+                return Float.valueOf(value);
+            case 'D':
+                return Double.valueOf(value);
+            case CLASS:
+                return new ClassValue(value);
+            case ENUM:
+                int end = value.lastIndexOf(';');
+                if (end < 0) {
+                    throw new IOException("Invalid enum: " + token);
+                }
+                return new EnumValue(value.substring(0, end + 1), value.substring(end + 1));
+            case ARRAY:
+                int count = Integer.parseInt(value);
+                List<Object> list = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    list.add(decode(tokens, index));
+                }
+                return Collections.unmodifiableList(list);
+            default:
+                throw new IOException("Unknown value: " + token);
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid number: " + token, e);
+        }
+    }
+
+    private static String unescape(String value) throws IOException {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder builder = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '\\') {
+                builder.append(c);
+                continue;
+            }
+            if (++i == value.length()) {
+                throw new IOException("Invalid escape: " + value);
+            }
+            switch (value.charAt(i)) {
+            case '\\':
+                builder.append('\\');
+                break;
+            case 's':
+                builder.append(' ');
+                break;
+            case 't':
+                builder.append('\t');
+                break;
+            case 'n':
+                builder.append('\n');
+                break;
+            case 'r':
+                builder.append('\r');
+                break;
+            default:
+                throw new IOException("Invalid escape: " + value);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * A class used as an annotation value.
+     */
+    public static final class ClassValue {
+        private final String descriptor;
+
+        public ClassValue(String descriptor) {
+            this.descriptor = descriptor;
+        }
+
+        /**
+         * @return The class descriptor, e.g. {@code Ljava/lang/String;}
+         */
+        public String getDescriptor() {
+            return descriptor;
+        }
+
+        @Override
+        public String toString() {
+            return descriptor;
+        }
+    }
+
+    /**
+     * An enum constant used as an annotation value.
+     */
+    public static final class EnumValue {
+        private final String descriptor;
+        private final String name;
+
+        public EnumValue(String descriptor, String name) {
+            this.descriptor = descriptor;
+            this.name = name;
+        }
+
+        /**
+         * @return The enum's descriptor
+         */
+        public String getDescriptor() {
+            return descriptor;
+        }
+
+        /**
+         * @return The constant's name
+         */
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String toString() {
+            return descriptor + name;
+        }
+    }
+}